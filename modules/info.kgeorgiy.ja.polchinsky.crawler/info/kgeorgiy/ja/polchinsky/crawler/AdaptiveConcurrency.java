@@ -0,0 +1,96 @@
+package info.kgeorgiy.ja.polchinsky.crawler;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.function.LongSupplier;
+
+public final class AdaptiveConcurrency {
+    private final int initial;
+    private final double decrease;
+    private final double tolerance;
+
+    public AdaptiveConcurrency(final int initial, final double decrease, final double tolerance) {
+        if (initial < 1) {
+            throw new IllegalArgumentException("Initial concurrency should be positive: " + initial);
+        }
+        if (decrease <= 0 || decrease >= 1) {
+            throw new IllegalArgumentException("Decrease factor should be in (0, 1): " + decrease);
+        }
+        if (tolerance < 1) {
+            throw new IllegalArgumentException("Latency tolerance should be at least 1: " + tolerance);
+        }
+        this.initial = initial;
+        this.decrease = decrease;
+        this.tolerance = tolerance;
+    }
+
+    public static AdaptiveConcurrency aimd() {
+        return new AdaptiveConcurrency(1, 0.5, 3);
+    }
+
+    public int getInitial() {
+        return initial;
+    }
+
+    public double getDecrease() {
+        return decrease;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    Control control(final int ceiling) {
+        return control(ceiling, System::nanoTime);
+    }
+
+    // Clock should agree with start times passed to update
+    public Control control(final int ceiling, final LongSupplier clock) {
+        if (ceiling < 1) {
+            throw new IllegalArgumentException("Concurrency ceiling should be positive: " + ceiling);
+        }
+        return new Control(ceiling, clock);
+    }
+
+    public final class Control {
+        private static final double BASELINE_WEIGHT = 1.0 / 16;
+
+        private final int ceiling;
+        private final LongSupplier clock;
+        private double limit;
+        private double baseline;
+        private boolean slowStart;
+        private long lastDecrease;
+
+        private Control(final int ceiling, final LongSupplier clock) {
+            this.ceiling = ceiling;
+            this.clock = clock;
+            this.limit = Math.min(initial, ceiling);
+            this.slowStart = true;
+            this.lastDecrease = clock.getAsLong();
+        }
+
+        public synchronized int getLimit() {
+            return (int) limit;
+        }
+
+        public synchronized int update(final long start, final long latency, final IOException exception) {
+            // Missing pages say nothing about host load
+            final boolean failed = exception != null && !(exception instanceof FileNotFoundException);
+            final boolean congested = baseline > 0 && latency > tolerance * baseline;
+            baseline = baseline == 0 ? latency : Math.min(latency, baseline + (latency - baseline) * BASELINE_WEIGHT);
+
+            if (failed || congested) {
+                // Requests started before the previous decrease have seen the old limit
+                if (start - lastDecrease > 0) {
+                    limit = Math.max(1, limit * decrease);
+                    lastDecrease = clock.getAsLong();
+                    slowStart = false;
+                }
+            } else {
+                limit = Math.min(ceiling, limit + (slowStart ? 1 : 1 / limit));
+            }
+            return (int) limit;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package info.kgeorgiy.ja.polchinsky.crawler;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+class Checkpoint implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final int depth;
+    final int level;
+    final List<String> current;
+    final Set<String> completed;
+    final List<String> queue;
+    final Set<String> downloaded;
+    final Map<String, IOException> failed;
+    final Set<String> extracted;
+
+    Checkpoint(final int depth,
+               final int level,
+               final List<String> current,
+               final Set<String> completed,
+               final List<String> queue,
+               final Set<String> downloaded,
+               final Map<String, IOException> failed,
+               final Set<String> extracted) {
+        this.depth = depth;
+        this.level = level;
+        this.current = current;
+        this.completed = completed;
+        this.queue = queue;
+        this.downloaded = downloaded;
+        this.failed = failed;
+        this.extracted = extracted;
+    }
+
+    static Checkpoint read(final Path file) throws IOException {
+        try (final ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return (Checkpoint) ois.readObject();
+        } catch (final ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Invalid checkpoint " + file, e);
+        }
+    }
+
+    void write(final Path file) throws IOException {
+        final Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        final Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (final ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                oos.writeObject(this);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package info.kgeorgiy.ja.polchinsky.crawler;
+
+import java.time.Duration;
+
+public final class CrawlBudget {
+    public static final CrawlBudget UNLIMITED = new CrawlBudget(Integer.MAX_VALUE, Long.MAX_VALUE, null);
+
+    private final int maxPages;
+    private final long maxBytes;
+    private final Duration timeLimit;
+
+    public CrawlBudget(final int maxPages, final long maxBytes, final Duration timeLimit) {
+        if (maxPages < 0 || maxBytes < 0 || timeLimit != null && timeLimit.isNegative()) {
+            throw new IllegalArgumentException("Budget limits should be non-negative");
+        }
+        this.maxPages = maxPages;
+        this.maxBytes = maxBytes;
+        this.timeLimit = timeLimit;
+    }
+
+    public static CrawlBudget pages(final int maxPages) {
+        return UNLIMITED.withPages(maxPages);
+    }
+
+    public static CrawlBudget bytes(final long maxBytes) {
+        return UNLIMITED.withBytes(maxBytes);
+    }
+
+    public static CrawlBudget time(final Duration timeLimit) {
+        return UNLIMITED.withTime(timeLimit);
+    }
+
+    public CrawlBudget withPages(final int maxPages) {
+        return new CrawlBudget(maxPages, maxBytes, timeLimit);
+    }
+
+    public CrawlBudget withBytes(final long maxBytes) {
+        return new CrawlBudget(maxPages, maxBytes, timeLimit);
+    }
+
+    public CrawlBudget withTime(final Duration timeLimit) {
+        return new CrawlBudget(maxPages, maxBytes, timeLimit);
+    }
+
+    public int getMaxPages() {
+        return maxPages;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public Duration getTimeLimit() {
+        return timeLimit;
+    }
+}
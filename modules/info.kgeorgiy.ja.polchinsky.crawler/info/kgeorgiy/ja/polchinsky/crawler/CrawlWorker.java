@@ -0,0 +1,92 @@
+package info.kgeorgiy.ja.polchinsky.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.*;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.*;
+
+public final class CrawlWorker {
+    private CrawlWorker() {
+    }
+
+    public static void main(final String[] args) {
+        if (args == null || args.length < 7 || Arrays.stream(args).anyMatch(Objects::isNull)) {
+            System.err.println("Usage:");
+            System.err.printf("\t%s token port shard downloaders extractors perHost downloader [arguments...]%n",
+                    CrawlWorker.class.getName());
+            System.err.println("\tdownloader: http | cached [directory] | replay url downloadDelay extractDelay");
+            System.err.println("\tcached shards use their own subdirectories: directory/shard-<shard>");
+            return;
+        }
+
+        try {
+            final byte[] token = ShardProtocol.parseToken(args[0]);
+            final int port = Integer.parseInt(args[1]);
+            final int shard = Integer.parseInt(args[2]);
+            final int downloaders = Integer.parseInt(args[3]);
+            final int extractors = Integer.parseInt(args[4]);
+            final int perHost = Integer.parseInt(args[5]);
+            final Downloader downloader = downloader(Arrays.asList(args).subList(6, args.length), shard);
+            try (final WebCrawler crawler = new WebCrawler(downloader, downloaders, extractors, perHost)) {
+                serve(token, port, shard, crawler);
+            } finally {
+                if (downloader instanceof Closeable) {
+                    ((Closeable) downloader).close();
+                }
+            }
+        } catch (final NumberFormatException e) {
+            System.err.println("Couldn't parse number: " + e.getMessage());
+        } catch (final IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+        } catch (final IOException e) {
+            System.err.println("Shard failed: " + e.getMessage());
+        }
+    }
+
+    static Downloader downloader(final List<String> spec, final int shard) throws IOException {
+        switch (spec.get(0)) {
+            case "http":
+                return new HttpDownloader();
+            case "cached":
+                // Storage directory is locked by a single process, so shards cannot share it
+                return spec.size() > 1
+                        ? new CachingDownloader(Path.of(spec.get(1)).resolve("shard-" + shard))
+                        : new CachingDownloader();
+            case "replay":
+                if (spec.size() != 4) {
+                    throw new IllegalArgumentException("Usage: replay url downloadDelay extractDelay");
+                }
+                return new ReplayDownloader(spec.get(1), Integer.parseInt(spec.get(2)), Integer.parseInt(spec.get(3)));
+            default:
+                throw new IllegalArgumentException("Unknown downloader " + spec.get(0));
+        }
+    }
+
+    private static void serve(final byte[] token, final int port, final int shard, final WebCrawler crawler) throws IOException {
+        try (final Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.write(token);
+            out.writeInt(shard);
+            out.flush();
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            while (true) {
+                final List<String> urls = new ArrayList<>();
+                if (!ShardProtocol.readRequest(in, urls)) {
+                    return;
+                }
+                final boolean extract = in.readBoolean();
+
+                final Set<String> links = new HashSet<>();
+                final Result result = crawler.downloadLevel(urls, extract, links);
+                ShardProtocol.writeStrings(out, result.getDownloaded());
+                ShardProtocol.writeErrors(out, result.getErrors());
+                ShardProtocol.writeStrings(out, links);
+                out.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package info.kgeorgiy.ja.polchinsky.crawler;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.ToIntFunction;
+
+public final class CrawlerMetrics {
+    private static final int REPORT_HOSTS = 10;
+
+    private final long start;
+    private final Pool downloaders;
+    private final Pool extractors;
+    private final ToIntFunction<String> hostLimit;
+    private final ConcurrentMap<String, Host> hosts;
+    private final LongAdder pages;
+    private final LongAdder errors;
+    private final LongAdder bytes;
+    private final LongAdder links;
+    private final LongAdder reused;
+    private final AtomicLong frontier;
+    private ScheduledExecutorService reporter;
+    private ScheduledFuture<?> report;
+
+    CrawlerMetrics(final int downloaders, final int extractors, final ToIntFunction<String> hostLimit) {
+        this.start = System.nanoTime();
+        this.downloaders = new Pool(downloaders, start);
+        this.extractors = new Pool(extractors, start);
+        this.hostLimit = hostLimit;
+        this.hosts = new ConcurrentHashMap<>();
+        this.pages = new LongAdder();
+        this.errors = new LongAdder();
+        this.bytes = new LongAdder();
+        this.links = new LongAdder();
+        this.reused = new LongAdder();
+        this.frontier = new AtomicLong();
+    }
+
+    public Pool getDownloaders() {
+        return downloaders;
+    }
+
+    public Pool getExtractors() {
+        return extractors;
+    }
+
+    public Map<String, Host> getHosts() {
+        return Map.copyOf(hosts);
+    }
+
+    public Host getHost(final String host) {
+        return hosts.get(host);
+    }
+
+    public long getPages() {
+        return pages.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getLinks() {
+        return links.sum();
+    }
+
+    public long getReused() {
+        return reused.sum();
+    }
+
+    public long getFrontier() {
+        return frontier.get();
+    }
+
+    public Duration getElapsed() {
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    public double getPagesPerSecond() {
+        return perSecond(getPages(), System.nanoTime() - start);
+    }
+
+    // Replaces previous report schedule, so repeated calls do not multiply reports
+    public synchronized void report(final Duration period, final Consumer<String> log) {
+        if (reporter == null) {
+            reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+                final Thread thread = new Thread(task, "crawler-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (report != null) {
+            report.cancel(false);
+        }
+
+        final long[] last = {System.nanoTime(), getPages()};
+        report = reporter.scheduleAtFixedRate(() -> {
+            final long now = System.nanoTime();
+            final long current = getPages();
+            log.accept(String.format("%.1f pages/s recent, %s", perSecond(current - last[1], now - last[0]), this));
+            last[0] = now;
+            last[1] = current;
+        }, period.toNanos(), period.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    synchronized void close() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+            report = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%d pages (%.1f/s), %d errors, %d reused, %d bytes, %d links, frontier %d, "
+                        + "downloaders %s, extractors %s",
+                getPages(), getPagesPerSecond(), getErrors(), getReused(), getBytes(), getLinks(), getFrontier(),
+                downloaders, extractors));
+        hosts.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, Host> e) -> e.getValue().getCount()).reversed())
+                .limit(REPORT_HOSTS)
+                .forEach(e -> sb.append(System.lineSeparator()).append("    ").append(e.getKey()).append(' ').append(e.getValue()));
+        return sb.toString();
+    }
+
+    private static double perSecond(final long count, final long nanos) {
+        return nanos <= 0 ? 0 : count * 1e9 / nanos;
+    }
+
+    Host host(final String host) {
+        return hosts.computeIfAbsent(host, h -> new Host(() -> hostLimit.applyAsInt(h)));
+    }
+
+    void queued(final int count) {
+        frontier.addAndGet(count);
+    }
+
+    void downloaded(final long size) {
+        pages.increment();
+        bytes.add(Math.max(0, size));
+    }
+
+    void failed() {
+        errors.increment();
+    }
+
+    void reused() {
+        reused.increment();
+    }
+
+    void extracted(final int count) {
+        links.add(count);
+    }
+
+    public static final class Pool {
+        private final int size;
+        private final long start;
+        private final AtomicInteger busy;
+        private final LongAdder busyNanos;
+
+        private Pool(final int size, final long start) {
+            this.size = size;
+            this.start = start;
+            this.busy = new AtomicInteger();
+            this.busyNanos = new LongAdder();
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getBusy() {
+            return busy.get();
+        }
+
+        public double getUtilization() {
+            final long elapsed = System.nanoTime() - start;
+            return elapsed <= 0 ? 0 : Math.min(1, busyNanos.sum() / ((double) elapsed * size));
+        }
+
+        Runnable wrap(final Runnable task) {
+            return () -> {
+                final long begin = System.nanoTime();
+                busy.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    busy.decrementAndGet();
+                    busyNanos.add(System.nanoTime() - begin);
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d/%d busy (%.0f%% utilized)", getBusy(), size, getUtilization() * 100);
+        }
+    }
+
+    public static final class Host {
+        // Bucket i holds latencies in [2^(i - 1), 2^i) microseconds
+        private static final int BUCKETS = 40;
+
+        private final IntSupplier limit;
+        private final AtomicLongArray histogram;
+        private final LongAdder totalNanos;
+        private final LongAdder errors;
+        private final AtomicInteger inFlight;
+        private final AtomicInteger peakInFlight;
+
+        private Host(final IntSupplier limit) {
+            this.limit = limit;
+            this.histogram = new AtomicLongArray(BUCKETS);
+            this.totalNanos = new LongAdder();
+            this.errors = new LongAdder();
+            this.inFlight = new AtomicInteger();
+            this.peakInFlight = new AtomicInteger();
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += histogram.get(i);
+            }
+            return count;
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        public int getPeakInFlight() {
+            return peakInFlight.get();
+        }
+
+        public int getLimit() {
+            return limit.getAsInt();
+        }
+
+        public long[] getHistogram() {
+            final long[] result = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                result[i] = histogram.get(i);
+            }
+            return result;
+        }
+
+        public Duration getMeanLatency() {
+            final long count = getCount();
+            return Duration.ofNanos(count == 0 ? 0 : totalNanos.sum() / count);
+        }
+
+        public Duration getLatency(final double quantile) {
+            final long[] buckets = getHistogram();
+            long total = 0;
+            for (final long bucket : buckets) {
+                total += bucket;
+            }
+
+            final long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0) {
+                    return Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(1L << i));
+                }
+            }
+            return Duration.ZERO;
+        }
+
+        void started() {
+            final int current = inFlight.incrementAndGet();
+            peakInFlight.accumulateAndGet(current, Math::max);
+        }
+
+        void finished(final long nanos, final boolean success) {
+            inFlight.decrementAndGet();
+            totalNanos.add(nanos);
+            histogram.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos / 1000)));
+            if (!success) {
+                errors.increment();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d done, %d errors, %d/%d in flight (peak %d), mean %dms, p50 <%dms, p99 <%dms",
+                    getCount(), getErrors(), getInFlight(), getLimit(), getPeakInFlight(),
+                    getMeanLatency().toMillis(), getLatency(0.5).toMillis(), getLatency(0.99).toMillis());
+        }
+    }
+}
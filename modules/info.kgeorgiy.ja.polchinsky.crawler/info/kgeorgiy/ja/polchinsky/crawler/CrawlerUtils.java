@@ -0,0 +1,16 @@
+package info.kgeorgiy.ja.polchinsky.crawler;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+
+final class CrawlerUtils {
+    private CrawlerUtils() {
+    }
+
+    static IOException unwrap(final Throwable cause) {
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            return unwrap(cause.getCause());
+        }
+        return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    }
+}
@@ -0,0 +1,46 @@
+package info.kgeorgiy.ja.polchinsky.crawler;
+
+import java.util.regex.Pattern;
+
+// Orders links within a single level only: levels are still crawled breadth-first,
+// so all links compared by a priority have the same depth
+@FunctionalInterface
+public interface LinkPriority {
+    double priority(Link link);
+
+    default LinkPriority plus(final LinkPriority other) {
+        return link -> priority(link) + other.priority(link);
+    }
+
+    default LinkPriority times(final double weight) {
+        return link -> priority(link) * weight;
+    }
+
+    static LinkPriority inboundLinks() {
+        return link -> link.inbound;
+    }
+
+    static LinkPriority hostFreshness() {
+        return link -> -link.hostPages;
+    }
+
+    static LinkPriority matching(final Pattern pattern, final double score) {
+        return link -> pattern.matcher(link.url).find() ? score : 0;
+    }
+
+    final class Link {
+        public final String url;
+        public final String host;
+        public final int depth;
+        public final int inbound;
+        public final int hostPages;
+
+        public Link(final String url, final String host, final int depth, final int inbound, final int hostPages) {
+            this.url = url;
+            this.host = host;
+            this.depth = depth;
+            this.inbound = inbound;
+            this.hostPages = hostPages;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package info.kgeorgiy.ja.polchinsky.crawler;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Coordinator and workers exchange counted lists of length-prefixed UTF-8 strings
+final class ShardProtocol {
+    private static final int TOKEN_LENGTH = 32;
+    private static final int MAX_COUNT = 1 << 24;
+    private static final int MAX_STRING = 1 << 20;
+    private static final int STOP = -1;
+
+    private ShardProtocol() {
+    }
+
+    static String token() {
+        final byte[] token = new byte[TOKEN_LENGTH];
+        new SecureRandom().nextBytes(token);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+    }
+
+    static byte[] parseToken(final String token) {
+        final byte[] bytes = Base64.getUrlDecoder().decode(token);
+        if (bytes.length != TOKEN_LENGTH) {
+            throw new IllegalArgumentException("Invalid token");
+        }
+        return bytes;
+    }
+
+    static boolean checkToken(final DataInputStream in, final byte[] token) throws IOException {
+        final byte[] actual = new byte[TOKEN_LENGTH];
+        in.readFully(actual);
+        return MessageDigest.isEqual(token, actual);
+    }
+
+    static void writeRequest(final DataOutputStream out, final Collection<String> urls, final boolean extract) throws IOException {
+        writeStrings(out, urls);
+        out.writeBoolean(extract);
+    }
+
+    static void writeStop(final DataOutputStream out) throws IOException {
+        out.writeInt(STOP);
+    }
+
+    // Returns false if coordinator asked to stop
+    static boolean readRequest(final DataInputStream in, final Collection<String> urls) throws IOException {
+        final int count = in.readInt();
+        if (count == STOP) {
+            return false;
+        }
+        readStrings(in, count, urls::add);
+        return true;
+    }
+
+    static void writeErrors(final DataOutputStream out, final Map<String, IOException> errors) throws IOException {
+        out.writeInt(errors.size());
+        for (final Map.Entry<String, IOException> entry : errors.entrySet()) {
+            writeString(out, entry.getKey());
+            final String message = entry.getValue().getMessage();
+            out.writeBoolean(message != null);
+            if (message != null) {
+                writeString(out, message);
+            }
+        }
+    }
+
+    // Only messages of errors are passed between processes
+    static void readErrors(final DataInputStream in, final Map<String, IOException> errors) throws IOException {
+        final int count = count(in.readInt());
+        for (int i = 0; i < count; i++) {
+            final String url = readString(in);
+            errors.put(url, new IOException(in.readBoolean() ? readString(in) : null));
+        }
+    }
+
+    static void writeStrings(final DataOutputStream out, final Collection<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (final String string : strings) {
+            writeString(out, string);
+        }
+    }
+
+    static void readStrings(final DataInputStream in, final Consumer<String> strings) throws IOException {
+        readStrings(in, in.readInt(), strings);
+    }
+
+    private static void readStrings(final DataInputStream in, final int count, final Consumer<String> strings) throws IOException {
+        for (int i = count(count); i > 0; i--) {
+            strings.accept(readString(in));
+        }
+    }
+
+    // DataOutput.writeUTF is limited to 64K and uses modified UTF-8
+    private static void writeString(final DataOutputStream out, final String string) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > MAX_STRING) {
+            throw new IOException("Invalid string length " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int count(final int count) throws IOException {
+        if (count < 0 || count > MAX_COUNT) {
+            throw new IOException("Invalid count " + count);
+        }
+        return count;
+    }
+}
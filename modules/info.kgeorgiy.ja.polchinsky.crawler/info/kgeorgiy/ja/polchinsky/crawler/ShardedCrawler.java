@@ -0,0 +1,253 @@
+package info.kgeorgiy.ja.polchinsky.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Crawler;
+import info.kgeorgiy.java.advanced.crawler.Result;
+import info.kgeorgiy.java.advanced.crawler.URLUtils;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class ShardedCrawler implements Crawler {
+    private static final int CONNECT_TIMEOUT = 60_000;
+    private static final long CLOSE_TIMEOUT = 10_000;
+
+    private final List<Process> processes;
+    private final Shard[] shards;
+
+    public ShardedCrawler(final int shards,
+                          final int downloaders,
+                          final int extractors,
+                          final int perHost,
+                          final String... downloader) throws IOException {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Number of shards should be positive: " + shards);
+        }
+        if (downloader.length == 0) {
+            throw new IllegalArgumentException("Downloader is not specified");
+        }
+
+        this.processes = new ArrayList<>();
+        this.shards = new Shard[shards];
+        // Any local process may connect to the port, so workers prove they were started by this run
+        final String token = ShardProtocol.token();
+        try (final ServerSocket server = new ServerSocket(0, shards, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(CONNECT_TIMEOUT);
+            for (int i = 0; i < shards; i++) {
+                final List<String> command = new ArrayList<>(workerCommand());
+                command.addAll(List.of(
+                        token,
+                        Integer.toString(server.getLocalPort()),
+                        Integer.toString(i),
+                        Integer.toString(downloaders),
+                        Integer.toString(extractors),
+                        Integer.toString(perHost)
+                ));
+                command.addAll(List.of(downloader));
+                processes.add(new ProcessBuilder(command).inheritIO().start());
+            }
+
+            final byte[] expected = ShardProtocol.parseToken(token);
+            for (int i = 0; i < shards; ) {
+                final Shard shard = Shard.accept(server.accept(), expected);
+                if (shard == null) {
+                    continue;
+                }
+                if (shard.index < 0 || shard.index >= shards || this.shards[shard.index] != null) {
+                    shard.close();
+                    throw new IOException("Unexpected shard " + shard.index);
+                }
+                this.shards[shard.index] = shard;
+                i++;
+            }
+        } catch (final IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private static List<String> workerCommand() {
+        final String java = ProcessHandle.current().info().command()
+                .orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        final List<String> command = new ArrayList<>(List.of(java));
+
+        final String classPath = System.getProperty("java.class.path");
+        if (classPath != null && !classPath.isEmpty()) {
+            command.addAll(List.of("-cp", classPath));
+        }
+
+        final Module module = CrawlWorker.class.getModule();
+        if (module.isNamed()) {
+            command.addAll(List.of("-p", System.getProperty("jdk.module.path"), "-m", module.getName() + "/" + CrawlWorker.class.getName()));
+        } else {
+            command.add(CrawlWorker.class.getName());
+        }
+        return command;
+    }
+
+    public static void main(final String[] args) {
+        if (args == null || args.length < 6 || Arrays.stream(args).anyMatch(Objects::isNull)) {
+            System.err.println("Usage:");
+            System.err.printf("\t%s url depth shards downloaders extractors perHost [downloader [arguments...]]%n",
+                    ShardedCrawler.class.getName());
+            return;
+        }
+
+        try {
+            final String url = args[0];
+            final int depth = Integer.parseInt(args[1]);
+            final int shards = Integer.parseInt(args[2]);
+            final int downloaders = Integer.parseInt(args[3]);
+            final int extractors = Integer.parseInt(args[4]);
+            final int perHost = Integer.parseInt(args[5]);
+            final String[] downloader = args.length > 6
+                    ? Arrays.copyOfRange(args, 6, args.length)
+                    : new String[]{"cached"};
+
+            try (final Crawler crawler = new ShardedCrawler(shards, downloaders, extractors, perHost, downloader)) {
+                final Result result = crawler.download(url, depth);
+                System.out.printf("%d pages downloaded, %d error(s)%n", result.getDownloaded().size(), result.getErrors().size());
+            }
+        } catch (final NumberFormatException e) {
+            System.err.println("Couldn't parse number: " + e.getMessage());
+        } catch (final IOException e) {
+            System.err.println("Couldn't start shards: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized Result download(final String url, final int depth) {
+        final List<String> downloaded = new ArrayList<>();
+        final Map<String, IOException> errors = new HashMap<>();
+        final Set<String> extracted = new HashSet<>(Set.of(url));
+        List<String> current = List.of(url);
+
+        try {
+            for (int level = 1; level <= depth && !current.isEmpty(); level++) {
+                final boolean extract = level < depth;
+
+                final List<List<String>> parts = new ArrayList<>();
+                for (int i = 0; i < shards.length; i++) {
+                    parts.add(new ArrayList<>());
+                }
+                for (final String page : current) {
+                    parts.get(shard(page)).add(page);
+                }
+
+                // Requests are sent first, so shards work on the level concurrently
+                for (int i = 0; i < shards.length; i++) {
+                    shards[i].send(parts.get(i), extract);
+                }
+
+                final List<String> next = new ArrayList<>();
+                for (final Shard shard : shards) {
+                    shard.receive(downloaded, errors, link -> {
+                        if (extracted.add(link)) {
+                            next.add(link);
+                        }
+                    });
+                }
+                current = next;
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Shard failed", e);
+        }
+        return new Result(downloaded, errors);
+    }
+
+    private int shard(final String url) {
+        try {
+            return Math.floorMod(URLUtils.getHost(url).hashCode(), shards.length);
+        } catch (final MalformedURLException e) {
+            // Shard reports the error itself
+            return 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        for (final Shard shard : shards) {
+            if (shard != null) {
+                shard.close();
+            }
+        }
+        for (final Process process : processes) {
+            try {
+                if (!process.waitFor(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (final InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class Shard {
+        private final Socket socket;
+        private final int index;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+
+        private Shard(final Socket socket, final int index, final DataInputStream in) throws IOException {
+            this.socket = socket;
+            this.index = index;
+            this.in = in;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        // Returns null for connections without a valid token, nothing else is read from them
+        static Shard accept(final Socket socket, final byte[] token) throws IOException {
+            try {
+                socket.setSoTimeout(CONNECT_TIMEOUT);
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                if (!ShardProtocol.checkToken(in, token)) {
+                    socket.close();
+                    return null;
+                }
+                final int index = in.readInt();
+                socket.setSoTimeout(0);
+                return new Shard(socket, index, in);
+            } catch (final IOException e) {
+                socket.close();
+                if (e instanceof EOFException || e instanceof SocketTimeoutException) {
+                    return null;
+                }
+                throw e;
+            }
+        }
+
+        void send(final List<String> urls, final boolean extract) throws IOException {
+            ShardProtocol.writeRequest(out, urls, extract);
+            out.flush();
+        }
+
+        void receive(final List<String> downloaded,
+                     final Map<String, IOException> errors,
+                     final Consumer<String> links) throws IOException {
+            ShardProtocol.readStrings(in, downloaded::add);
+            ShardProtocol.readErrors(in, errors);
+            ShardProtocol.readStrings(in, links);
+        }
+
+        void close() {
+            try {
+                ShardProtocol.writeStop(out);
+                out.flush();
+            } catch (final IOException ignored) {
+                // Shard is already gone
+            }
+            try {
+                socket.close();
+            } catch (final IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package info.kgeorgiy.ja.polchinsky.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Document;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public final class SharedPages {
+    private static final int DEFAULT_CAPACITY = 10_000;
+
+    private final int capacity;
+    // Access order, so least recently claimed pages are evicted first
+    private final Map<String, CompletableFuture<Document>> pages;
+
+    public SharedPages() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SharedPages(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity should be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.pages = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return pages.size();
+    }
+
+    public synchronized void clear() {
+        pages.clear();
+    }
+
+    synchronized CompletableFuture<Document> claim(final String url, final CompletableFuture<Document> page) {
+        final CompletableFuture<Document> existing = pages.putIfAbsent(url, page);
+        if (existing == null) {
+            evict();
+        }
+        return existing;
+    }
+
+    // Pages still being downloaded are awaited by other crawls, so only completed ones are evicted
+    private void evict() {
+        final Iterator<CompletableFuture<Document>> eldest = pages.values().iterator();
+        while (pages.size() > capacity && eldest.hasNext()) {
+            if (eldest.next().isDone()) {
+                eldest.remove();
+            }
+        }
+    }
+
+    void complete(final CompletableFuture<Document> page, final Document document) {
+        page.complete(new SharedDocument(document));
+    }
+
+    void abandon(final String url, final CompletableFuture<Document> page) {
+        // Waiting crawls download the page themselves
+        synchronized (this) {
+            pages.remove(url, page);
+        }
+        page.cancel(false);
+    }
+
+    private static final class SharedDocument implements Document {
+        private final long size;
+        private Document document;
+        private List<String> links;
+
+        private SharedDocument(final Document document) {
+            this.document = document;
+            this.size = document.size();
+        }
+
+        // Failures are not memoized: interrupted or transient errors are retried by the next caller
+        @Override
+        public synchronized List<String> extractLinks() throws IOException {
+            if (document != null) {
+                links = List.copyOf(document.extractLinks());
+                document = null;
+            }
+            return links;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package info.kgeorgiy.ja.polchinsky.crawler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+class TaskLimiter {
+    private final Executor executor;
+    private final Queue<Task> pending;
+    private int limit;
+    private int active;
+
+    TaskLimiter(final int limit, final Executor executor) {
+        this.limit = limit;
+        this.executor = executor;
+        this.pending = new ArrayDeque<>();
+    }
+
+    // Rejected action is run instead of the task if the executor refuses it
+    void submit(final Runnable task, final Runnable rejected) {
+        synchronized (this) {
+            if (active >= limit) {
+                pending.add(new Task(task, rejected));
+                return;
+            }
+            active++;
+        }
+        task.run();
+    }
+
+    synchronized void acquire() throws InterruptedException {
+        while (active >= limit) {
+            wait();
+        }
+        active++;
+    }
+
+    void release() {
+        final Task next;
+        synchronized (this) {
+            next = active <= limit ? pending.poll() : null;
+            if (next == null) {
+                active--;
+                notify();
+                return;
+            }
+        }
+        execute(next);
+    }
+
+    synchronized int getLimit() {
+        return limit;
+    }
+
+    void setLimit(final int limit) {
+        final List<Task> admitted = new ArrayList<>();
+        synchronized (this) {
+            this.limit = limit;
+            while (active < limit && !pending.isEmpty()) {
+                admitted.add(pending.poll());
+                active++;
+            }
+            notifyAll();
+        }
+        admitted.forEach(this::execute);
+    }
+
+    // Releases may come from HTTP client threads after the executor is shut down
+    private void execute(final Task task) {
+        try {
+            executor.execute(task.task);
+        } catch (final RejectedExecutionException e) {
+            final List<Task> dropped;
+            synchronized (this) {
+                active--;
+                dropped = new ArrayList<>(pending);
+                pending.clear();
+                notifyAll();
+            }
+            task.rejected.run();
+            dropped.forEach(t -> t.rejected.run());
+        }
+    }
+
+    private static final class Task {
+        private final Runnable task;
+        private final Runnable rejected;
+
+        private Task(final Runnable task, final Runnable rejected) {
+            this.task = task;
+            this.rejected = rejected;
+        }
+    }
+}
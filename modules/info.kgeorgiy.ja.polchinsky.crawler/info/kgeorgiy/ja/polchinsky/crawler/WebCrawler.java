@@ -3,45 +3,116 @@ package info.kgeorgiy.ja.polchinsky.crawler;
 import info.kgeorgiy.java.advanced.crawler.*;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 public class WebCrawler implements Crawler {
+    private static final Duration CHECKPOINT_INTERVAL = Duration.ofSeconds(10);
+    private static final long CLOSE_TIMEOUT = 10_000;
+    private static final Duration REPORT_PERIOD = Duration.ofSeconds(5);
+    private static final String NO_METRICS = "--no-metrics";
+
     private final Downloader downloader;
+    private final AsyncDownloader asyncDownloader;
     private final ExecutorService downloaders;
     private final ExecutorService extractors;
     private final int perHost;
-    private final Map<String, Semaphore> hosts;
+    private final Map<String, TaskLimiter> hosts;
+    private final AdaptiveConcurrency adaptive;
+    private final Map<String, AdaptiveConcurrency.Control> controls;
+    private final TaskLimiter inFlight;
+    private final LinkPriority priority;
+    private final CrawlerMetrics metrics;
+    private final SharedPages shared;
+    private volatile Duration checkpointInterval = CHECKPOINT_INTERVAL;
 
     public WebCrawler(final Downloader downloader, final int downloaders, final int extractors, final int perHost) {
+        this(downloader, downloaders, extractors, perHost, null);
+    }
+
+    public WebCrawler(final Downloader downloader,
+                      final int downloaders,
+                      final int extractors,
+                      final int perHost,
+                      final LinkPriority priority) {
+        this(downloader, downloaders, extractors, perHost, priority, null);
+    }
+
+    public WebCrawler(final Downloader downloader,
+                      final int downloaders,
+                      final int extractors,
+                      final int perHost,
+                      final LinkPriority priority,
+                      final AdaptiveConcurrency adaptive) {
+        this(downloader, downloaders, extractors, perHost, priority, adaptive, null);
+    }
+
+    public WebCrawler(final Downloader downloader,
+                      final int downloaders,
+                      final int extractors,
+                      final int perHost,
+                      final LinkPriority priority,
+                      final AdaptiveConcurrency adaptive,
+                      final SharedPages shared) {
         this.downloader = downloader;
-        this.downloaders = Executors.newFixedThreadPool(downloaders);
+        this.shared = shared;
+        this.priority = priority;
+        this.asyncDownloader = downloader instanceof AsyncDownloader ? (AsyncDownloader) downloader : null;
+        // Asynchronous downloads do not occupy threads, so only a few are needed to start them
+        final int threads = asyncDownloader == null
+                ? downloaders
+                : Math.min(downloaders, Runtime.getRuntime().availableProcessors());
+        this.downloaders = Executors.newFixedThreadPool(threads);
         this.extractors = Executors.newFixedThreadPool(extractors);
         this.perHost = perHost;
         this.hosts = new ConcurrentHashMap<>();
+        this.adaptive = adaptive;
+        this.controls = new ConcurrentHashMap<>();
+        this.metrics = new CrawlerMetrics(threads, extractors, host -> {
+            final TaskLimiter limiter = hosts.get(host);
+            return limiter == null ? perHost : limiter.getLimit();
+        });
+        this.inFlight = new TaskLimiter(downloaders, this::executeDownloader);
     }
 
     public static void main(final String[] args) {
         Objects.requireNonNull(args);
-        if (args.length == 0) {
+        final boolean report = args.length == 0 || !NO_METRICS.equals(args[0]);
+        final String[] arguments = report ? args : Arrays.copyOfRange(args, 1, args.length);
+        if (arguments.length == 0) {
             System.err.println("Usage:");
-            System.err.printf("\t%s url [depth [downloads [extractors [perHost]]]]",
-                    WebCrawler.class.getName());
+            System.err.printf("\t%s [%s] url [depth [downloads [extractors [perHost]]]]",
+                    WebCrawler.class.getName(), NO_METRICS);
             System.err.println();
             return;
         }
 
         try {
-            final String url = args[0];
-            final int depth = getOrDefault(args, 1);
-            final int downloads = getOrDefault(args, 2);
-            final int extractors = getOrDefault(args, 3);
-            final int perHost = getOrDefault(args, 4);
-
-            final Downloader downloader = new CachingDownloader();
-            try (final Crawler crawler = new WebCrawler(downloader, downloads, extractors, perHost)) {
+            final String url = arguments[0];
+            final int depth = getOrDefault(arguments, 1);
+            final int downloads = getOrDefault(arguments, 2);
+            final int extractors = getOrDefault(arguments, 3);
+            final int perHost = getOrDefault(arguments, 4);
+
+            try (final CachingDownloader downloader = new CachingDownloader();
+                 final WebCrawler crawler = new WebCrawler(downloader, downloads, extractors, perHost)) {
+                if (report) {
+                    crawler.getMetrics().report(REPORT_PERIOD, System.err::println);
+                }
                 crawler.download(url, depth);
+                if (report) {
+                    System.err.println(crawler.getMetrics());
+                }
             }
         } catch (final NumberFormatException e) {
             System.err.println("Couldn't parse number: " + e.getMessage());
@@ -56,18 +127,82 @@ public class WebCrawler implements Crawler {
 
     @Override
     public Result download(final String url, final int depth) {
-        return new BreadthFirstExtractor(url).downloadRecursively(depth);
+        return download(url, depth, CrawlBudget.UNLIMITED, null);
+    }
+
+    public Result download(final String url, final int depth, final Path checkpoint) {
+        return download(url, depth, CrawlBudget.UNLIMITED, checkpoint);
+    }
+
+    public Result download(final String url, final int depth, final CrawlBudget budget) {
+        return download(url, depth, budget, null);
+    }
+
+    public Result download(final String url, final int depth, final CrawlBudget budget, final Path checkpoint) {
+        return new BreadthFirstExtractor(url, depth, budget, checkpoint).downloadRecursively();
+    }
+
+    Result downloadLevel(final List<String> urls, final boolean extract, final Collection<String> links) {
+        return new BreadthFirstExtractor(urls).downloadLevel(extract, links);
+    }
+
+    public Result resume(final Path checkpoint) throws IOException {
+        return resume(checkpoint, CrawlBudget.UNLIMITED);
+    }
+
+    public Result resume(final Path checkpoint, final CrawlBudget budget) throws IOException {
+        return new BreadthFirstExtractor(Checkpoint.read(checkpoint), budget, checkpoint).downloadRecursively();
+    }
+
+    public CrawlerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setCheckpointInterval(final Duration checkpointInterval) {
+        if (checkpointInterval.isNegative() || checkpointInterval.isZero()) {
+            throw new IllegalArgumentException("Checkpoint interval should be positive: " + checkpointInterval);
+        }
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    private void executeDownloader(final Runnable task) {
+        downloaders.execute(metrics.getDownloaders().wrap(task));
+    }
+
+    private TaskLimiter hostLimiter(final String host) {
+        return hosts.computeIfAbsent(host, h -> new TaskLimiter(
+                adaptive == null ? perHost : Math.min(perHost, adaptive.getInitial()),
+                this::executeDownloader
+        ));
+    }
+
+    private void adapt(final String host, final TaskLimiter limiter, final long start, final IOException exception) {
+        if (adaptive != null) {
+            final AdaptiveConcurrency.Control control = controls.computeIfAbsent(host, h -> adaptive.control(perHost));
+            limiter.setLimit(control.update(start, System.nanoTime() - start, exception));
+        }
+    }
+
+    private static boolean isInterruption(final IOException e) {
+        // Socket timeouts are interrupted I/O too, but they are real failures
+        return e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)
+                || e.getCause() instanceof CancellationException
+                || e.getCause() instanceof InterruptedException;
     }
 
     @Override
-    @SuppressWarnings("ResultOfMethodCallIgnored")
     public void close() {
+        metrics.close();
         downloaders.shutdown();
         extractors.shutdown();
         try {
-            final long timeout = Long.MAX_VALUE;
-            downloaders.awaitTermination(timeout, TimeUnit.MILLISECONDS);
-            extractors.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+            // Downloads abandoned by exhausted budget are interrupted after timeout
+            final boolean terminated = downloaders.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)
+                    & extractors.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS);
+            if (!terminated) {
+                downloaders.shutdownNow();
+                extractors.shutdownNow();
+            }
         } catch (final InterruptedException ignored) {
             downloaders.shutdownNow();
             extractors.shutdownNow();
@@ -75,76 +210,499 @@ public class WebCrawler implements Crawler {
     }
 
     class BreadthFirstExtractor {
+        private final int depth;
         private final Queue<String> queue;
         private final Map<String, IOException> failed;
         private final Set<String> downloaded;
         private final Set<String> extracted;
+        private final Set<String> completed;
         private final Phaser phaser;
+        private final Path checkpoint;
+        private int level;
+        private List<String> current;
+        private final Map<String, Integer> hostPages;
+        private final CrawlBudget budget;
+        private final long deadline;
+        private final AtomicInteger scheduledPages;
+        private final AtomicLong downloadedBytes;
+        private final AtomicBoolean unsized;
+        private volatile boolean exhausted;
+        private volatile boolean aborted;
 
-        public BreadthFirstExtractor(final String url) {
+        private BreadthFirstExtractor(final int depth, final CrawlBudget budget, final Path checkpoint) {
+            this.depth = depth;
             this.queue = new ConcurrentLinkedQueue<>();
             this.failed = new ConcurrentHashMap<>();
             this.downloaded = ConcurrentHashMap.newKeySet();
             this.extracted = ConcurrentHashMap.newKeySet();
+            this.completed = ConcurrentHashMap.newKeySet();
             this.phaser = new Phaser(1);
-            queue.add(url);
+            this.checkpoint = checkpoint;
+            this.hostPages = new ConcurrentHashMap<>();
+            this.budget = budget;
+            this.deadline = budget.getTimeLimit() == null ? 0 : System.nanoTime() + budget.getTimeLimit().toNanos();
+            this.scheduledPages = new AtomicInteger();
+            this.downloadedBytes = new AtomicLong();
+            this.unsized = new AtomicBoolean();
         }
 
-        public Result downloadRecursively(final int depth) {
-            for (int i = 1; i <= depth; ++i) {
-                final List<String> previous = List.copyOf(queue);
-                final boolean last = i == depth;
-                queue.clear();
+        public BreadthFirstExtractor(final String url, final int depth, final CrawlBudget budget, final Path checkpoint) {
+            this(depth, budget, checkpoint);
+            this.level = 1;
+            this.current = List.of(url);
+            extracted.add(url);
+        }
+
+        public BreadthFirstExtractor(final List<String> urls) {
+            this(1, CrawlBudget.UNLIMITED, null);
+            this.level = 1;
+            this.current = urls;
+            extracted.addAll(urls);
+        }
 
-                previous.parallelStream()
-                        .filter(extracted::add)
+        public BreadthFirstExtractor(final Checkpoint state, final CrawlBudget budget, final Path checkpoint) {
+            this(state.depth, budget, checkpoint);
+            this.level = state.level;
+            this.current = state.current;
+            queue.addAll(state.queue);
+            extracted.addAll(state.extracted);
+            completed.addAll(state.completed);
+            failed.putAll(state.failed);
+            downloaded.addAll(state.downloaded);
+
+            // Pages of the current level that were not completed are processed again
+            current.stream()
+                    .filter(Predicate.not(completed::contains))
+                    .forEach(url -> {
+                        failed.remove(url);
+                        downloaded.remove(url);
+                    });
+        }
+
+        public Result downloadRecursively() {
+            while (level <= depth) {
+                final boolean last = level == depth;
+                // Prioritized levels are submitted sequentially to keep their order
+                (priority == null ? current.parallelStream() : current.stream())
+                        .filter(Predicate.not(completed::contains))
                         .forEach(url -> download(url, last));
-                phaser.arriveAndAwaitAdvance();
+                if (!awaitLevel()) {
+                    break;
+                }
+                if (exhausted) {
+                    // Pages skipped due to budget remain in the checkpoint
+                    checkpoint();
+                    break;
+                }
+
+                level++;
+                current = priority == null ? nextLevel() : nextLevelPrioritized();
+                queue.clear();
+                completed.clear();
+                checkpoint();
             }
 
             return new Result(List.copyOf(downloaded), failed);
         }
 
+        public Result downloadLevel(final boolean extract, final Collection<String> links) {
+            current.parallelStream().forEach(url -> download(url, !extract));
+            awaitLevel();
+            links.addAll(queue);
+            return new Result(List.copyOf(downloaded), failed);
+        }
+
+        private List<String> nextLevel() {
+            return queue.parallelStream()
+                    .filter(extracted::add)
+                    .collect(Collectors.toList());
+        }
+
+        private List<String> nextLevelPrioritized() {
+            final Map<String, Integer> inbound = new HashMap<>();
+            queue.forEach(url -> inbound.merge(url, 1, Integer::sum));
+            return inbound.entrySet().stream()
+                    .filter(e -> extracted.add(e.getKey()))
+                    .map(e -> link(e.getKey(), e.getValue()))
+                    .map(link -> Map.entry(link.url, priority.priority(link)))
+                    .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+        }
+
+        private LinkPriority.Link link(final String url, final int inbound) {
+            String host;
+            try {
+                host = URLUtils.getHost(url);
+            } catch (final MalformedURLException e) {
+                host = null;
+            }
+            final int pages = host == null ? 0 : hostPages.getOrDefault(host, 0);
+            return new LinkPriority.Link(url, host, level, inbound, pages);
+        }
+
+        private void countPage(final String host) {
+            if (priority != null) {
+                hostPages.merge(host, 1, Integer::sum);
+            }
+        }
+
+        private boolean hasDeadline() {
+            return budget.getTimeLimit() != null;
+        }
+
+        private boolean reserve() {
+            if (exhausted) {
+                return false;
+            }
+            if (isSpent() || scheduledPages.incrementAndGet() > budget.getMaxPages()) {
+                exhausted = true;
+                return false;
+            }
+            return true;
+        }
+
+        // Checked again when download starts, since all pages of a level are scheduled at once
+        private boolean isSpent() {
+            if (hasDeadline() && System.nanoTime() - deadline >= 0 || downloadedBytes.get() >= budget.getMaxBytes()) {
+                exhausted = true;
+                return true;
+            }
+            return false;
+        }
+
+        private void downloaded(final String url, final String host, final Document document) {
+            downloaded.add(url);
+            final long size = document.size();
+            if (size >= 0) {
+                downloadedBytes.addAndGet(size);
+            } else if (budget.getMaxBytes() != Long.MAX_VALUE && unsized.compareAndSet(false, true)) {
+                System.err.println("Byte budget ignores documents of unknown size, such as " + url);
+            }
+            metrics.downloaded(size);
+            countPage(host);
+        }
+
+        private void failed(final String url, final IOException e) {
+            failed.put(url, e);
+            metrics.failed();
+        }
+
+        private boolean awaitLevel() {
+            if (checkpoint == null && !hasDeadline()) {
+                phaser.arriveAndAwaitAdvance();
+                return true;
+            }
+
+            final int phase = phaser.arrive();
+            while (true) {
+                long timeout = checkpoint == null ? Long.MAX_VALUE : checkpointInterval.toNanos();
+                if (hasDeadline()) {
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        // Partial result is returned without waiting for downloads in progress
+                        exhausted = true;
+                        aborted = true;
+                        checkpoint();
+                        return false;
+                    }
+                    timeout = Math.min(timeout, remaining);
+                }
+
+                try {
+                    phaser.awaitAdvanceInterruptibly(phase, timeout, TimeUnit.NANOSECONDS);
+                    return true;
+                } catch (final TimeoutException e) {
+                    checkpoint();
+                } catch (final InterruptedException e) {
+                    aborted = true;
+                    checkpoint();
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+
+        private void checkpoint() {
+            if (checkpoint == null) {
+                return;
+            }
+
+            // Completed pages are copied first, so their links are already in the queue
+            final Set<String> completedCopy = Set.copyOf(completed);
+            final Checkpoint state = new Checkpoint(
+                    depth,
+                    level,
+                    List.copyOf(current),
+                    completedCopy,
+                    List.copyOf(queue),
+                    Set.copyOf(downloaded),
+                    Map.copyOf(failed),
+                    Set.copyOf(extracted)
+            );
+            try {
+                state.write(checkpoint);
+            } catch (final IOException e) {
+                System.err.println("Couldn't write checkpoint: " + e.getMessage());
+            }
+        }
+
         private void download(final String url, final boolean last) {
+            if (!reserve()) {
+                return;
+            }
+
             final String host;
             try {
                 host = URLUtils.getHost(url);
             } catch (final MalformedURLException e) {
-                failed.put(url, e);
+                failed(url, e);
+                completed.add(url);
                 return;
             }
 
-            final Semaphore limiter = hosts.computeIfAbsent(host, h -> new Semaphore(perHost));
+            metrics.queued(1);
+            schedule(url, host, last);
+        }
+
+        private void schedule(final String url, final String host, final boolean last) {
+            CompletableFuture<Document> page = null;
+            if (shared != null) {
+                page = new CompletableFuture<>();
+                final CompletableFuture<Document> existing = shared.claim(url, page);
+                if (existing != null) {
+                    reuse(url, host, last, existing);
+                    return;
+                }
+            }
+
+            if (asyncDownloader != null) {
+                downloadAsync(url, host, last, page);
+            } else {
+                downloadSync(url, host, last, page);
+            }
+        }
+
+        private void reuse(final String url, final String host, final boolean last, final CompletableFuture<Document> existing) {
             phaser.register();
-            downloaders.submit(() -> {
+            existing.whenComplete((document, exception) -> {
+                if (exception instanceof CancellationException) {
+                    schedule(url, host, last);
+                    phaser.arriveAndDeregister();
+                    return;
+                }
+
+                metrics.queued(-1);
+                metrics.reused();
+                boolean settled = false;
+                boolean extracting = false;
+                try {
+                    if (exception == null) {
+                        downloaded(url, host, document);
+                        settled = true;
+                        if (!last) {
+                            extract(url, document);
+                            extracting = true;
+                        }
+                    } else {
+                        final IOException error = CrawlerUtils.unwrap(exception);
+                        if (!isInterruption(error)) {
+                            failed(url, error);
+                            settled = true;
+                        }
+                    }
+                } finally {
+                    complete(url, settled, extracting);
+                    phaser.arriveAndDeregister();
+                }
+            });
+        }
+
+        // Only pages with a final outcome are completed, others are downloaded again on resume
+        private void complete(final String url, final boolean settled, final boolean extracting) {
+            if (settled && !extracting) {
+                completed.add(url);
+            }
+        }
+
+        private void share(final CompletableFuture<Document> page, final Document document) {
+            if (page != null) {
+                shared.complete(page, document);
+            }
+        }
+
+        private void share(final CompletableFuture<Document> page, final IOException error) {
+            if (page != null) {
+                page.completeExceptionally(error);
+            }
+        }
+
+        private void abandon(final String url, final CompletableFuture<Document> page) {
+            if (page != null && !page.isDone()) {
+                shared.abandon(url, page);
+            }
+        }
+
+        private void downloadSync(final String url, final String host, final boolean last, final CompletableFuture<Document> page) {
+            final TaskLimiter limiter = hostLimiter(host);
+            final CrawlerMetrics.Host hostMetrics = metrics.host(host);
+            phaser.register();
+            downloaders.submit(metrics.getDownloaders().wrap(() -> {
+                metrics.queued(-1);
+                if (aborted) {
+                    abandon(url, page);
+                    phaser.arriveAndDeregister();
+                    return;
+                }
+
+                boolean settled = false;
+                boolean extracting = false;
+                long start = 0;
+                IOException error = null;
                 try {
                     limiter.acquire();
-                    final Document document = downloader.download(url);
-                    downloaded.add(url);
+                    if (isSpent()) {
+                        limiter.release();
+                        return;
+                    }
+                    hostMetrics.started();
+                    start = System.nanoTime();
+                    Document document;
+                    try {
+                        document = downloader.download(url);
+                    } catch (final IOException e) {
+                        error = e;
+                        if (!isInterruption(e)) {
+                            share(page, e);
+                        }
+                        throw e;
+                    }
+                    if (page != null) {
+                        share(page, document);
+                        document = page.join();
+                    }
+                    downloaded(url, host, document);
+                    settled = true;
 
                     if (!last) {
-                        extract(document);
+                        extract(url, document);
+                        extracting = true;
                     }
                 } catch (final IOException e) {
-                    failed.put(url, e);
+                    if (!isInterruption(e)) {
+                        failed(url, e);
+                        settled = true;
+                    }
                 } catch (final InterruptedException ignored) {
                 } finally {
+                    abandon(url, page);
+                    if (start != 0) {
+                        hostMetrics.finished(System.nanoTime() - start, error == null);
+                        adapt(host, limiter, start, error);
+                        limiter.release();
+                    }
+                    complete(url, settled, extracting);
+                    phaser.arriveAndDeregister();
+                }
+            }));
+        }
+
+        private void downloadAsync(final String url, final String host, final boolean last, final CompletableFuture<Document> page) {
+            final TaskLimiter limiter = hostLimiter(host);
+            phaser.register();
+            executeDownloader(() -> limiter.submit(
+                    () -> inFlight.submit(
+                            () -> startDownload(url, host, limiter, last, page),
+                            () -> {
+                                limiter.release();
+                                drop(url, page);
+                            }
+                    ),
+                    () -> drop(url, page)
+            ));
+        }
+
+        // Dropped downloads are not completed, as interrupted ones
+        private void drop(final String url, final CompletableFuture<Document> page) {
+            metrics.queued(-1);
+            abandon(url, page);
+            phaser.arriveAndDeregister();
+        }
+
+        private void startDownload(final String url,
+                                   final String host,
+                                   final TaskLimiter limiter,
+                                   final boolean last,
+                                   final CompletableFuture<Document> page) {
+            if (aborted || isSpent()) {
+                inFlight.release();
+                limiter.release();
+                drop(url, page);
+                return;
+            }
+            metrics.queued(-1);
+
+            final CrawlerMetrics.Host hostMetrics = metrics.host(host);
+            hostMetrics.started();
+            final long start = System.nanoTime();
+            CompletableFuture<Document> future;
+            try {
+                future = asyncDownloader.downloadAsync(url);
+            } catch (final RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+
+            future.whenComplete((downloaded, exception) -> {
+                final IOException error = exception == null ? null : CrawlerUtils.unwrap(exception);
+                hostMetrics.finished(System.nanoTime() - start, error == null);
+                adapt(host, limiter, start, error);
+                boolean settled = false;
+                boolean extracting = false;
+                try {
+                    if (error == null) {
+                        share(page, downloaded);
+                        final Document document = page == null ? downloaded : page.join();
+                        downloaded(url, host, document);
+                        settled = true;
+                        if (!last) {
+                            extract(url, document);
+                            extracting = true;
+                        }
+                    } else if (!isInterruption(error)) {
+                        share(page, error);
+                        failed(url, error);
+                        settled = true;
+                    }
+                } finally {
+                    abandon(url, page);
+                    inFlight.release();
                     limiter.release();
+                    complete(url, settled, extracting);
                     phaser.arriveAndDeregister();
                 }
             });
         }
 
-        private void extract(final Document document) {
+        private void extract(final String url, final Document document) {
             phaser.register();
-            extractors.submit(() -> {
+            extractors.submit(metrics.getExtractors().wrap(() -> {
+                if (aborted) {
+                    phaser.arriveAndDeregister();
+                    return;
+                }
+
+                boolean settled = true;
                 try {
-                    queue.addAll(document.extractLinks());
-                } catch (final IOException ignored) {
+                    final List<String> links = document.extractLinks();
+                    queue.addAll(links);
+                    metrics.extracted(links.size());
+                } catch (final IOException e) {
+                    settled = !isInterruption(e);
                 } finally {
+                    complete(url, settled, false);
                     phaser.arriveAndDeregister();
                 }
-            });
+            }));
         }
     }
 }
@@ -0,0 +1,200 @@
+package info.kgeorgiy.ja.polchinsky.walk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class HashCache {
+    // Entries are kept per hash function, so switching --hash does not discard the others
+    private static final int MAGIC = 0x57484332;
+    private static final int MAX_FIELD_LENGTH = 1 << 16;
+    // Files modified that recently may still be changing within the timestamp granularity
+    private static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final Path file;
+    private final String hashName;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Entry>> others = new HashMap<>();
+    // Entries of files not visited by the current walk are dropped on save
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+    private volatile boolean modified;
+
+    private HashCache(Path file, String hashName) {
+        this.file = file;
+        this.hashName = hashName;
+    }
+
+    public static HashCache load(Path file, String hashName) throws IOException {
+        HashCache cache = new HashCache(file, hashName);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                // Foreign file or older format: start from scratch
+                return cache;
+            }
+            for (int sections = in.readInt(); sections > 0; sections--) {
+                String name = in.readUTF();
+                Map<String, Entry> section = name.equals(hashName) ? cache.entries : new HashMap<>();
+                for (int count = in.readInt(); count > 0; count--) {
+                    String path = readString(in);
+                    Entry entry = new Entry(in.readLong(), in.readLong(), readString(in), readBytes(in));
+                    section.put(path, entry);
+                }
+                if (section != cache.entries) {
+                    cache.others.put(name, section);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return cache;
+        } catch (IOException e) {
+            if (Files.isDirectory(file)) {
+                throw new IOException("Hash cache is a directory: " + file, e);
+            }
+            // Damaged cache is just a cold cache
+            cache.entries.clear();
+            cache.others.clear();
+            cache.modified = true;
+        }
+        return cache;
+    }
+
+    public byte[] get(Path path, BasicFileAttributes attrs) {
+        String key = key(path);
+        seen.add(key);
+        Entry entry = entries.get(key);
+        return entry != null && entry.matches(attrs) ? entry.hash : null;
+    }
+
+    public void put(Path path, BasicFileAttributes attrs, byte[] hash) {
+        String key = key(path);
+        seen.add(key);
+        long modifiedTime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        if (System.currentTimeMillis() * 1_000_000 - modifiedTime < RACY_NANOS) {
+            if (entries.remove(key) != null) {
+                modified = true;
+            }
+            return;
+        }
+        entries.put(key, new Entry(attrs.size(), modifiedTime, fileKey(attrs), hash));
+        modified = true;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void save() throws IOException {
+        Map<String, Entry> retained = new HashMap<>();
+        for (String key : seen) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                retained.put(key, entry);
+            }
+        }
+        if (!modified && retained.size() == entries.size()) {
+            return;
+        }
+
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            copyPermissions(file, temp);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(others.size() + 1);
+                writeSection(out, hashName, retained);
+                for (Map.Entry<String, Map<String, Entry>> other : others.entrySet()) {
+                    writeSection(out, other.getKey(), other.getValue());
+                }
+            }
+            // Readers never see a partially written cache
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            entries.keySet().retainAll(retained.keySet());
+            modified = false;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void copyPermissions(Path from, Path to) throws IOException {
+        try {
+            Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+        } catch (NoSuchFileException | UnsupportedOperationException ignored) {
+            // A new cache stays readable by the owner only, as it lists walked files
+        }
+    }
+
+    private static void writeSection(DataOutputStream out, String name, Map<String, Entry> section) throws IOException {
+        out.writeUTF(name);
+        out.writeInt(section.size());
+        for (Map.Entry<String, Entry> e : section.entrySet()) {
+            Entry entry = e.getValue();
+            writeBytes(out, e.getKey().getBytes(StandardCharsets.UTF_8));
+            out.writeLong(entry.size);
+            out.writeLong(entry.modifiedTime);
+            writeBytes(out, entry.fileKey.getBytes(StandardCharsets.UTF_8));
+            writeBytes(out, entry.hash);
+        }
+    }
+
+    private static String key(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    private static String fileKey(BasicFileAttributes attrs) {
+        return Objects.toString(attrs.fileKey(), "");
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FIELD_LENGTH) {
+            throw new IOException("Invalid hash cache entry");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static class Entry {
+        private final long size;
+        private final long modifiedTime;
+        private final String fileKey;
+        private final byte[] hash;
+
+        Entry(long size, long modifiedTime, String fileKey, byte[] hash) {
+            this.size = size;
+            this.modifiedTime = modifiedTime;
+            this.fileKey = fileKey;
+            this.hash = hash;
+        }
+
+        boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size()
+                    && modifiedTime == attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                    && fileKey.equals(HashCache.fileKey(attrs));
+        }
+    }
+}
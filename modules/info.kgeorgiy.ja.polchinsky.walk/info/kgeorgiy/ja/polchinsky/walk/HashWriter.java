@@ -0,0 +1,119 @@
+package info.kgeorgiy.ja.polchinsky.walk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class HashWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_UTF8_BYTES_PER_CHAR = 3;
+
+    private final WritableByteChannel channel;
+    private final byte[] bytes;
+    private final ByteBuffer buffer;
+    private int position;
+
+    public HashWriter(WritableByteChannel channel) {
+        this(channel, BUFFER_SIZE);
+    }
+
+    public HashWriter(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.bytes = new byte[bufferSize];
+        this.buffer = ByteBuffer.wrap(bytes);
+    }
+
+    public static HashWriter open(Path file) throws IOException {
+        return new HashWriter(FileChannel.open(
+                file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE));
+    }
+
+    public void write(byte[] hash, String filename) throws IOException {
+        int length = hash.length * 2 + 1 + filename.length() * MAX_UTF8_BYTES_PER_CHAR + LINE_SEPARATOR.length;
+        if (bytes.length - position < length) {
+            flush();
+            if (bytes.length < length) {
+                writeLarge(hash, filename);
+                return;
+            }
+        }
+
+        for (byte b : hash) {
+            bytes[position++] = HEX_DIGITS[(b >> 4) & 0xf];
+            bytes[position++] = HEX_DIGITS[b & 0xf];
+        }
+        bytes[position++] = ' ';
+        encode(filename);
+        for (byte b : LINE_SEPARATOR) {
+            bytes[position++] = b;
+        }
+    }
+
+    // Same as String.getBytes(UTF_8): malformed surrogates are replaced with '?'
+    private void encode(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes[position++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[position++] = (byte) (0xc0 | c >> 6);
+                bytes[position++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                int codePoint = s.codePointAt(i);
+                if (Character.isSupplementaryCodePoint(codePoint)) {
+                    bytes[position++] = (byte) (0xf0 | codePoint >> 18);
+                    bytes[position++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                    bytes[position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                    bytes[position++] = (byte) (0x80 | codePoint & 0x3f);
+                    i++;
+                } else {
+                    bytes[position++] = '?';
+                }
+            } else {
+                bytes[position++] = (byte) (0xe0 | c >> 12);
+                bytes[position++] = (byte) (0x80 | c >> 6 & 0x3f);
+                bytes[position++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+    }
+
+    private void writeLarge(byte[] hash, String filename) throws IOException {
+        StringBuilder line = new StringBuilder(hash.length * 2 + filename.length() + 2);
+        for (byte b : hash) {
+            line.append((char) HEX_DIGITS[(b >> 4) & 0xf]).append((char) HEX_DIGITS[b & 0xf]);
+        }
+        line.append(' ').append(filename).append(System.lineSeparator());
+        writeFully(ByteBuffer.wrap(line.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public void flush() throws IOException {
+        buffer.clear().limit(position);
+        writeFully(buffer);
+        position = 0;
+    }
+
+    private void writeFully(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
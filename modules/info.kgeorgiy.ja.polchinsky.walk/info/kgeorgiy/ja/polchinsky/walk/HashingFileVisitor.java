@@ -1,50 +1,134 @@
 package info.kgeorgiy.ja.polchinsky.walk;
 
 import info.kgeorgiy.ja.polchinsky.walk.hash.HashFunction;
+import info.kgeorgiy.ja.polchinsky.walk.hash.Hasher;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 
 public class HashingFileVisitor extends SimpleFileVisitor<Path> {
     private static final int BUFFER_SIZE = 8192;
-    private static final long ERROR_HASH = 0L;
+    private static final int DIRECT_BUFFER_SIZE = 1 << 16;
+    private static final long MAP_THRESHOLD = 1 << 20;
+    private static final long MAP_SIZE = 1 << 26;
+    // Message of the InternalError HotSpot raises on SIGBUS in Unsafe/mapped buffer access
+    private static final String UNSAFE_ACCESS_FAULT = "unsafe memory access operation";
 
     private final HashFunction hashFunction;
-    private final BufferedWriter writer;
+    private final HashWriter writer;
+    private final ReadMode readMode;
+    private final byte[] errorHash;
+    private final HashCache cache;
+    // Hashing may run on several threads, see ParallelHashingFileVisitor
+    private final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(
+            () -> ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE));
 
-    public HashingFileVisitor(HashFunction hashFunction, BufferedWriter writer) {
+    public HashingFileVisitor(HashFunction hashFunction, HashWriter writer) {
+        this(hashFunction, writer, ReadMode.STREAM);
+    }
+
+    public HashingFileVisitor(HashFunction hashFunction, HashWriter writer, ReadMode readMode) {
+        this(hashFunction, writer, readMode, null);
+    }
+
+    public HashingFileVisitor(HashFunction hashFunction, HashWriter writer, ReadMode readMode, HashCache cache) {
         this.hashFunction = hashFunction;
         this.writer = writer;
+        this.readMode = readMode;
+        this.errorHash = new byte[hashFunction.length()];
+        this.cache = cache;
+    }
+
+    protected byte[] errorHash() {
+        return errorHash;
     }
 
-    private FileVisitResult write(long hash, String filename) throws IOException {
-        writer.write(String.format("%016x %s", hash, filename));
-        writer.newLine();
+    protected void flushWriter() throws IOException {
+        writer.flush();
+    }
+
+    protected FileVisitResult write(byte[] hash, String filename) throws IOException {
+        writer.write(hash, filename);
         return FileVisitResult.CONTINUE;
     }
 
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-        long hash = hashFunction.initValue();
+        byte[] hash = cached(file, attrs);
+        return write(hash != null ? hash : hash(file, attrs), file.toString());
+    }
+
+    protected byte[] cached(Path file, BasicFileAttributes attrs) {
+        return cache == null ? null : cache.get(file, attrs);
+    }
+
+    protected byte[] hash(Path file, BasicFileAttributes attrs) throws IOException {
+        byte[] hash = hash(file);
+        if (cache != null) {
+            cache.put(file, attrs, hash);
+        }
+        return hash;
+    }
+
+    protected byte[] hash(Path file) throws IOException {
+        return readMode == ReadMode.STREAM ? hashStream(file) : hashChannel(file);
+    }
+
+    private byte[] hashStream(Path file) throws IOException {
+        Hasher hasher = hashFunction.newHasher();
         try (InputStream inputStream = Files.newInputStream(file)) {
             byte[] bytes = new byte[BUFFER_SIZE];
             int bytesRead;
 
             while ((bytesRead = inputStream.read(bytes)) >= 0) {
-                hash = hashFunction.hashBytes(bytes, bytesRead, hash);
+                hasher.update(bytes, 0, bytesRead);
+            }
+        }
+        return hasher.digest();
+    }
+
+    private byte[] hashChannel(Path file) throws IOException {
+        Hasher hasher = hashFunction.newHasher();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (readMode == ReadMode.MMAP && size >= MAP_THRESHOLD) {
+                try {
+                    for (long position = 0; position < size; position += MAP_SIZE) {
+                        hasher.update(channel.map(
+                                FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_SIZE, size - position)));
+                    }
+                } catch (InternalError e) {
+                    // Access to the mapped pages of a file truncated by someone else faults with SIGBUS
+                    if (e.getMessage() == null || !e.getMessage().contains(UNSAFE_ACCESS_FAULT)) {
+                        throw e;
+                    }
+                    throw new IOException("File changed while it was hashed: " + file, e);
+                }
+                // The file may have grown since it was mapped
+                channel.position(size);
+            }
+
+            ByteBuffer buffer = buffers.get();
+            buffer.clear();
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                hasher.update(buffer);
+                buffer.clear();
             }
         }
-        return write(hash, file.toString());
+        return hasher.digest();
     }
 
     public FileVisitResult visitFileFailed(String filename) throws IOException {
-        return write(ERROR_HASH, filename);
+        return write(errorHash, filename);
     }
 
     @Override
@@ -0,0 +1,176 @@
+package info.kgeorgiy.ja.polchinsky.walk;
+
+import info.kgeorgiy.ja.polchinsky.walk.hash.HashFunction;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+public class ParallelHashingFileVisitor extends HashingFileVisitor implements AutoCloseable {
+    private static final Pending END = new Pending(null, null);
+
+    private final ExecutorService executor;
+    private final boolean eager;
+    private final BlockingQueue<Pending> pending;
+    private final Thread emitter;
+    private volatile IOException failure;
+
+    public ParallelHashingFileVisitor(
+            HashFunction hashFunction,
+            HashWriter writer,
+            ReadMode readMode,
+            HashCache cache,
+            ExecutorService executor,
+            int window) {
+        this(hashFunction, writer, readMode, cache, executor, window, false);
+    }
+
+    public ParallelHashingFileVisitor(
+            HashFunction hashFunction,
+            HashWriter writer,
+            ReadMode readMode,
+            HashCache cache,
+            ExecutorService executor,
+            int window,
+            boolean eager) {
+        super(hashFunction, writer, readMode, cache);
+        if (window < 1) {
+            throw new IllegalArgumentException("Window should be positive: " + window);
+        }
+        this.executor = executor;
+        this.eager = eager;
+        this.pending = new ArrayBlockingQueue<>(window);
+        // Results are written by a separate thread, so they are not delayed by traversal or input
+        this.emitter = new Thread(this::emit, "walk-emitter");
+        emitter.setDaemon(true);
+        emitter.start();
+    }
+
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        byte[] cached = cached(file, attrs);
+        if (cached != null) {
+            return enqueue(file.toString(), CompletableFuture.completedFuture(cached));
+        }
+        return enqueue(file.toString(), executor.submit(() -> {
+            try {
+                return hash(file, attrs);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+    }
+
+    @Override
+    public FileVisitResult visitFileFailed(String filename) throws IOException {
+        return enqueue(filename, CompletableFuture.completedFuture(errorHash()));
+    }
+
+    public void flush() throws IOException {
+        try {
+            if (emitter.isAlive()) {
+                pending.put(END);
+                emitter.join();
+            }
+        } catch (InterruptedException e) {
+            close();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing results");
+        }
+        checkFailure();
+    }
+
+    @Override
+    public void close() {
+        if (emitter.isAlive()) {
+            emitter.interrupt();
+            try {
+                emitter.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private FileVisitResult enqueue(String filename, Future<byte[]> hash) throws IOException {
+        checkFailure();
+        try {
+            // Blocks while the window is full, so memory stays bounded on unbounded input
+            pending.put(new Pending(filename, hash));
+        } catch (InterruptedException e) {
+            hash.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while hashing " + filename);
+        }
+        return FileVisitResult.CONTINUE;
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    private void emit() {
+        try {
+            while (true) {
+                Pending head = pending.poll();
+                if (head == null) {
+                    if (eager) {
+                        flushWriter();
+                    }
+                    head = pending.take();
+                }
+                if (head == END) {
+                    return;
+                }
+                write(result(head), head.filename);
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            failure = new InterruptedIOException("Interrupted while writing results");
+            return;
+        }
+
+        // Keeps traversal from blocking on the full window until it notices the failure
+        try {
+            Pending head;
+            while ((head = pending.take()) != END) {
+                head.hash.cancel(true);
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    private static byte[] result(Pending head) throws IOException, InterruptedException {
+        try {
+            return head.hash.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException("Cannot hash " + head.filename, e.getCause());
+        }
+    }
+
+    private static class Pending {
+        private final String filename;
+        private final Future<byte[]> hash;
+
+        Pending(String filename, Future<byte[]> hash) {
+            this.filename = filename;
+            this.hash = hash;
+        }
+    }
+}
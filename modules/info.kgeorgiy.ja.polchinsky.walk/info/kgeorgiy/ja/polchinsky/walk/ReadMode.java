@@ -0,0 +1,7 @@
+package info.kgeorgiy.ja.polchinsky.walk;
+
+public enum ReadMode {
+    STREAM,
+    CHANNEL,
+    MMAP
+}
@@ -1,52 +1,220 @@
 package info.kgeorgiy.ja.polchinsky.walk;
 
-import info.kgeorgiy.ja.polchinsky.walk.hash.Hashing;
 import info.kgeorgiy.ja.polchinsky.walk.util.ThrowableUtils;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class RecursiveWalk {
-    private static final int MAX_DEPTH = Integer.MAX_VALUE;
+    static final int MAX_DEPTH = Integer.MAX_VALUE;
+    private static final int FILES_PER_THREAD = 64;
+    private static final String STDIO = "-";
 
     public static void main(String[] args) {
-        if (args == null || args.length != 2 || args[0] == null || args[1] == null) {
+        List<String> files = new ArrayList<>();
+        WalkOptions options = null;
+        if (args != null && Arrays.stream(args).noneMatch(Objects::isNull)) {
+            try {
+                options = WalkOptions.parse(args, files);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+        if (options == null || files.size() != 2) {
             System.err.println("Usage:");
             System.err.printf(
-                    "\tjava %s input_file output_file",
-                    RecursiveWalk.class.getName());
+                    "\tjava %s %s input_file|- output_file|-",
+                    RecursiveWalk.class.getName(), WalkOptions.usage());
             System.err.println();
 //            System.exit(1);
             return;
         }
 
         try {
-            walk(args[0], args[1]);
+            if (STDIO.equals(files.get(0)) || STDIO.equals(files.get(1))) {
+                try (ReadableByteChannel input = openInput(files.get(0));
+                     WritableByteChannel output = openOutput(files.get(1))) {
+                    walk(input, output, MAX_DEPTH, options);
+                }
+            } else {
+                walk(files.get(0), files.get(1), MAX_DEPTH, options);
+            }
         } catch (IOException | SecurityException e) {
             System.err.println(ThrowableUtils.chainedMessage(e));
         }
     }
 
+    private static ReadableByteChannel openInput(String filename) throws IOException {
+        if (STDIO.equals(filename)) {
+            return nonClosingInput(new FileInputStream(FileDescriptor.in).getChannel());
+        }
+        Path inputFile = tryGetPath(filename);
+        checkInput(inputFile);
+        try {
+            return FileChannel.open(inputFile);
+        } catch (IOException e) {
+            throw new IOException("An I/O error occurred during opening input file: " + filename, e);
+        }
+    }
+
+    private static WritableByteChannel openOutput(String filename) throws IOException {
+        if (STDIO.equals(filename)) {
+            return nonClosingOutput(new FileOutputStream(FileDescriptor.out).getChannel());
+        }
+        Path outputFile = tryGetPath(filename);
+        createParent(outputFile);
+        try {
+            return FileChannel.open(
+                    outputFile,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new IOException("An I/O error occurred during creating/opening output file: " + filename, e);
+        }
+    }
+
+    // Closing a channel of a standard stream closes its descriptor for the whole JVM
+    private static ReadableByteChannel nonClosingInput(FileChannel channel) {
+        return new ReadableByteChannel() {
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                return channel.read(dst);
+            }
+
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private static WritableByteChannel nonClosingOutput(FileChannel channel) {
+        return new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                return channel.write(src);
+            }
+
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
     public static void walk(String inputFilename, String outputFilename) throws IOException, SecurityException {
         walk(inputFilename, outputFilename, MAX_DEPTH);
     }
 
     public static void walk(String inputFilename, String outputFilename, int depth) throws IOException, SecurityException {
+        walk(inputFilename, outputFilename, depth, WalkOptions.DEFAULT);
+    }
+
+    public static void walk(String inputFilename, String outputFilename, int depth, WalkOptions options)
+            throws IOException, SecurityException {
         Path inputFile = tryGetPath(inputFilename);
         Path outputFile = tryGetPath(outputFilename);
+        checkInput(inputFile);
+        createParent(outputFile);
 
+        HashCache cache = loadCache(options);
+        try (BufferedReader reader = Files.newBufferedReader(inputFile)) {
+            try (HashWriter writer = HashWriter.open(outputFile)) {
+                walk(reader, writer, depth, options, cache, false);
+            } catch (IOException e) {
+                throw new IOException(
+                        "An I/O error occurred during creating/opening output file: " + outputFilename, e);
+            }
+        } catch (IOException e) {
+            throw new IOException(
+                    "An I/O error occurred during opening input file: " + inputFilename, e);
+        }
+        saveCache(cache, options);
+    }
+
+    public static void walk(ReadableByteChannel input, WritableByteChannel output, int depth, WalkOptions options)
+            throws IOException, SecurityException {
+        HashCache cache = loadCache(options);
+        // Channels belong to the caller and are left open.
+        // Channels.newReader waits for a full buffer, so lines from a pipe would not be seen as they come
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                Channels.newInputStream(input), StandardCharsets.UTF_8.newDecoder()));
+        HashWriter writer = new HashWriter(output);
+        walk(reader, writer, depth, options, cache, true);
+        // Not flushed after a failure: the emitter may have failed on the same output
+        writer.flush();
+        saveCache(cache, options);
+    }
+
+    private static void walk(
+            BufferedReader reader,
+            HashWriter writer,
+            int depth,
+            WalkOptions options,
+            HashCache cache,
+            boolean streaming) throws IOException {
+        if (options.getThreads() == 1 && !streaming) {
+            walk(reader, depth, new HashingFileVisitor(
+                    options.getHashFunction(), writer, options.getReadMode(), cache));
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(options.getThreads());
+        try (ParallelHashingFileVisitor fileVisitor = new ParallelHashingFileVisitor(
+                options.getHashFunction(),
+                writer,
+                options.getReadMode(),
+                cache,
+                executor,
+                options.getThreads() * FILES_PER_THREAD,
+                streaming)) {
+            walk(reader, depth, fileVisitor);
+            fileVisitor.flush();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void checkInput(Path inputFile) throws IOException {
         if (Files.notExists(inputFile)) {
             throw new IOException("Input file does not exist");
         } else if (!Files.isRegularFile(inputFile)) {
             throw new IOException("Input file is not a file");
         }
+    }
 
+    private static void createParent(Path outputFile) throws IOException {
         if (outputFile.getParent() != null) {
             try {
                 Files.createDirectories(outputFile.getParent());
@@ -54,31 +222,41 @@ public class RecursiveWalk {
                 throw new IOException("Output file cannot be created", e);
             }
         }
+    }
 
-        try (BufferedReader reader = Files.newBufferedReader(inputFile)) {
-            try (BufferedWriter writer = Files.newBufferedWriter(outputFile)) {
-                HashingFileVisitor fileVisitor = new HashingFileVisitor(
-                        Hashing.pjw64(), writer);
-                String filename;
-
-                while ((filename = reader.readLine()) != null) {
-                    try {
-                        Files.walkFileTree(
-                                Path.of(filename),
-                                EnumSet.noneOf(FileVisitOption.class),
-                                depth,
-                                fileVisitor);
-                    } catch (InvalidPathException | SecurityException ignored) {
-                        fileVisitor.visitFileFailed(filename);
-                    }
-                }
+    private static HashCache loadCache(WalkOptions options) throws IOException {
+        if (options.getCacheFile() == null) {
+            return null;
+        }
+        try {
+            return HashCache.load(options.getCacheFile(), options.getHashName());
+        } catch (IOException e) {
+            throw new IOException("Hash cache cannot be loaded: " + options.getCacheFile(), e);
+        }
+    }
+
+    private static void saveCache(HashCache cache, WalkOptions options) throws IOException {
+        if (cache != null) {
+            try {
+                cache.save();
             } catch (IOException e) {
-                throw new IOException(
-                        "An I/O error occurred during creating/opening output file: " + outputFilename, e);
+                throw new IOException("Hash cache cannot be saved: " + options.getCacheFile(), e);
+            }
+        }
+    }
+
+    private static void walk(BufferedReader reader, int depth, HashingFileVisitor fileVisitor) throws IOException {
+        String filename;
+        while ((filename = reader.readLine()) != null) {
+            try {
+                Files.walkFileTree(
+                        Path.of(filename),
+                        EnumSet.noneOf(FileVisitOption.class),
+                        depth,
+                        fileVisitor);
+            } catch (InvalidPathException | SecurityException ignored) {
+                fileVisitor.visitFileFailed(filename);
             }
-        } catch (IOException e) {
-            throw new IOException(
-                    "An I/O error occurred during opening input file: " + inputFilename, e);
         }
     }
 
@@ -0,0 +1,123 @@
+package info.kgeorgiy.ja.polchinsky.walk;
+
+import info.kgeorgiy.ja.polchinsky.walk.hash.HashFunction;
+import info.kgeorgiy.ja.polchinsky.walk.hash.Hashing;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+public final class WalkOptions {
+    // Mapped files fail hard if truncated while hashed, so mmap is opt-in
+    public static final WalkOptions DEFAULT = new WalkOptions(1, ReadMode.CHANNEL, "pjw64", null);
+
+    private final int threads;
+    private final ReadMode readMode;
+    private final String hashName;
+    private final HashFunction hashFunction;
+    private final Path cacheFile;
+
+    private WalkOptions(int threads, ReadMode readMode, String hashName, Path cacheFile) {
+        this.threads = threads;
+        this.readMode = readMode;
+        this.hashName = hashName;
+        this.hashFunction = Hashing.forName(hashName);
+        this.cacheFile = cacheFile;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public ReadMode getReadMode() {
+        return readMode;
+    }
+
+    public String getHashName() {
+        return hashName;
+    }
+
+    HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    public Path getCacheFile() {
+        return cacheFile;
+    }
+
+    public WalkOptions withThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads should be positive: " + threads);
+        }
+        return new WalkOptions(threads, readMode, hashName, cacheFile);
+    }
+
+    public WalkOptions withReadMode(ReadMode readMode) {
+        return new WalkOptions(threads, readMode, hashName, cacheFile);
+    }
+
+    public WalkOptions withHash(String name) {
+        return new WalkOptions(threads, readMode, name.toLowerCase(Locale.ROOT), cacheFile);
+    }
+
+    public WalkOptions withCacheFile(Path cacheFile) {
+        return new WalkOptions(threads, readMode, hashName, cacheFile);
+    }
+
+    public static String usage() {
+        return "[--threads N] [--io stream|channel|mmap] [--hash " + Hashing.NAMES + "] [--cache cache_file]";
+    }
+
+    static WalkOptions parse(String[] args, List<String> positional) {
+        WalkOptions options = DEFAULT;
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                positional.add(args[i]);
+                continue;
+            }
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value of " + args[i]);
+            }
+
+            String value = args[++i];
+            switch (args[i - 1]) {
+                case "--threads":
+                    options = options.withThreads(parseInt(value));
+                    break;
+                case "--io":
+                    options = options.withReadMode(parseEnum(ReadMode.class, value));
+                    break;
+                case "--hash":
+                    options = options.withHash(value);
+                    break;
+                case "--cache":
+                    try {
+                        options = options.withCacheFile(Path.of(value));
+                    } catch (InvalidPathException e) {
+                        throw new IllegalArgumentException("Invalid cache file: " + value);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+            }
+        }
+        return options;
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + value);
+        }
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String value) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown value: " + value);
+        }
+    }
+}
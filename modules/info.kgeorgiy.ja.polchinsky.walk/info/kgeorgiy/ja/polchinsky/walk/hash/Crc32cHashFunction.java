@@ -0,0 +1,32 @@
+package info.kgeorgiy.ja.polchinsky.walk.hash;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+class Crc32cHashFunction implements HashFunction {
+    @Override
+    public Hasher newHasher() {
+        CRC32C crc = new CRC32C();
+        return new Hasher() {
+            @Override
+            public void update(byte[] bytes, int offset, int length) {
+                crc.update(bytes, offset, length);
+            }
+
+            @Override
+            public void update(ByteBuffer buffer) {
+                crc.update(buffer);
+            }
+
+            @Override
+            public byte[] digest() {
+                return ByteBuffer.allocate(Integer.BYTES).putInt((int) crc.getValue()).array();
+            }
+        };
+    }
+
+    @Override
+    public int length() {
+        return Integer.BYTES;
+    }
+}
@@ -1,13 +1,7 @@
 package info.kgeorgiy.ja.polchinsky.walk.hash;
 
 public interface HashFunction {
-    long hashBytes(byte[] bytes, int length, long start);
+    Hasher newHasher();
 
-    default long hashBytes(byte[] bytes, int length) {
-        return hashBytes(bytes, length, initValue());
-    }
-
-    default long initValue() {
-        return 0L;
-    }
+    int length();
 }
@@ -0,0 +1,18 @@
+package info.kgeorgiy.ja.polchinsky.walk.hash;
+
+import java.nio.ByteBuffer;
+
+public interface Hasher {
+    void update(byte[] bytes, int offset, int length);
+
+    default void update(ByteBuffer buffer) {
+        byte[] bytes = new byte[Math.min(buffer.remaining(), 8192)];
+        while (buffer.hasRemaining()) {
+            int length = Math.min(buffer.remaining(), bytes.length);
+            buffer.get(bytes, 0, length);
+            update(bytes, 0, length);
+        }
+    }
+
+    byte[] digest();
+}
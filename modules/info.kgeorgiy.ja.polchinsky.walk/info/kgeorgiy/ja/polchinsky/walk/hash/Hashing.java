@@ -1,12 +1,54 @@
 package info.kgeorgiy.ja.polchinsky.walk.hash;
 
+import java.util.Locale;
+
 public final class Hashing {
+    public static final String NAMES = "pjw64|xxhash64|crc32c|sha256";
 
     public static HashFunction pjw64() {
         return Pjw64Holder.PJW_64;
     }
 
+    public static HashFunction xxHash64() {
+        return XxHash64Holder.XX_HASH_64;
+    }
+
+    public static HashFunction crc32c() {
+        return Crc32cHolder.CRC_32C;
+    }
+
+    public static HashFunction sha256() {
+        return Sha256Holder.SHA_256;
+    }
+
+    public static HashFunction forName(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "pjw64":
+                return pjw64();
+            case "xxhash64":
+                return xxHash64();
+            case "crc32c":
+                return crc32c();
+            case "sha256":
+                return sha256();
+            default:
+                throw new IllegalArgumentException("Unknown hash function: " + name);
+        }
+    }
+
     private static class Pjw64Holder {
         static final HashFunction PJW_64 = new Pjw64HashFunction();
     }
+
+    private static class XxHash64Holder {
+        static final HashFunction XX_HASH_64 = new XxHash64HashFunction(0);
+    }
+
+    private static class Crc32cHolder {
+        static final HashFunction CRC_32C = new Crc32cHashFunction();
+    }
+
+    private static class Sha256Holder {
+        static final HashFunction SHA_256 = new MessageDigestHashFunction("SHA-256");
+    }
 }
@@ -0,0 +1,56 @@
+package info.kgeorgiy.ja.polchinsky.walk.hash;
+
+import java.nio.ByteBuffer;
+
+public abstract class LongHashFunction implements HashFunction {
+    public abstract long hashBytes(byte[] bytes, int offset, int length, long start);
+
+    public long hashBytes(byte[] bytes, int length, long start) {
+        return hashBytes(bytes, 0, length, start);
+    }
+
+    public long hashBytes(byte[] bytes, int length) {
+        return hashBytes(bytes, length, initValue());
+    }
+
+    public long hashBytes(ByteBuffer buffer, long start) {
+        byte[] bytes = new byte[Math.min(buffer.remaining(), 8192)];
+        while (buffer.hasRemaining()) {
+            int length = Math.min(buffer.remaining(), bytes.length);
+            buffer.get(bytes, 0, length);
+            start = hashBytes(bytes, length, start);
+        }
+        return start;
+    }
+
+    public long initValue() {
+        return 0L;
+    }
+
+    @Override
+    public int length() {
+        return Long.BYTES;
+    }
+
+    @Override
+    public Hasher newHasher() {
+        return new Hasher() {
+            private long hash = initValue();
+
+            @Override
+            public void update(byte[] bytes, int offset, int length) {
+                hash = hashBytes(bytes, offset, length, hash);
+            }
+
+            @Override
+            public void update(ByteBuffer buffer) {
+                hash = hashBytes(buffer, hash);
+            }
+
+            @Override
+            public byte[] digest() {
+                return ByteBuffer.allocate(Long.BYTES).putLong(hash).array();
+            }
+        };
+    }
+}
@@ -0,0 +1,49 @@
+package info.kgeorgiy.ja.polchinsky.walk.hash;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+class MessageDigestHashFunction implements HashFunction {
+    private final String algorithm;
+    private final int length;
+
+    MessageDigestHashFunction(String algorithm) {
+        this.algorithm = algorithm;
+        this.length = newDigest().getDigestLength();
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unsupported algorithm " + algorithm, e);
+        }
+    }
+
+    @Override
+    public Hasher newHasher() {
+        MessageDigest digest = newDigest();
+        return new Hasher() {
+            @Override
+            public void update(byte[] bytes, int offset, int length) {
+                digest.update(bytes, offset, length);
+            }
+
+            @Override
+            public void update(ByteBuffer buffer) {
+                digest.update(buffer);
+            }
+
+            @Override
+            public byte[] digest() {
+                return digest.digest();
+            }
+        };
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+}
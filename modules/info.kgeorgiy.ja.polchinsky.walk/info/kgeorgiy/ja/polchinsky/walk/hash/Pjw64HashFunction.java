@@ -1,21 +1,38 @@
 package info.kgeorgiy.ja.polchinsky.walk.hash;
 
-class Pjw64HashFunction implements HashFunction {
+import java.nio.ByteBuffer;
+
+class Pjw64HashFunction extends LongHashFunction {
     private static final int BITS = Long.SIZE;
     private static final int THREE_QUARTERS = BITS * 3 / 4;
     private static final int ONE_EIGHTH = BITS / 8;
     private static final long TOP_BITS = 0xff00_0000_0000_0000L;
 
     @Override
-    public long hashBytes(byte[] bytes, int length, long start) {
-        for (int i = 0; i < length; ++i) {
-            start = (start << ONE_EIGHTH) + (bytes[i] & 0xff);
-            long high = start & TOP_BITS;
-            if (high != 0) {
-                start ^= high >> THREE_QUARTERS;
-                start &= ~high;
-            }
+    public long hashBytes(byte[] bytes, int offset, int length, long start) {
+        for (int i = offset; i < offset + length; ++i) {
+            start = next(start, bytes[i]);
         }
         return start;
     }
+
+    @Override
+    public long hashBytes(ByteBuffer buffer, long start) {
+        int limit = buffer.limit();
+        for (int i = buffer.position(); i < limit; ++i) {
+            start = next(start, buffer.get(i));
+        }
+        buffer.position(limit);
+        return start;
+    }
+
+    private static long next(long hash, byte b) {
+        hash = (hash << ONE_EIGHTH) + (b & 0xff);
+        long high = hash & TOP_BITS;
+        if (high != 0) {
+            hash ^= high >> THREE_QUARTERS;
+            hash &= ~high;
+        }
+        return hash;
+    }
 }
@@ -0,0 +1,156 @@
+package info.kgeorgiy.ja.polchinsky.walk.hash;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+class XxHash64HashFunction implements HashFunction {
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+    private static final int STRIPE = 32;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final long seed;
+
+    XxHash64HashFunction(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public Hasher newHasher() {
+        return new XxHasher(seed);
+    }
+
+    @Override
+    public int length() {
+        return Long.BYTES;
+    }
+
+    private static long round(long acc, long input) {
+        return Long.rotateLeft(acc + input * PRIME_2, 31) * PRIME_1;
+    }
+
+    private static long merge(long acc, long v) {
+        return (acc ^ round(0, v)) * PRIME_1 + PRIME_4;
+    }
+
+    private static class XxHasher implements Hasher {
+        private final long seed;
+        private long v1;
+        private long v2;
+        private long v3;
+        private long v4;
+        private long total;
+        private final byte[] tail = new byte[STRIPE];
+        private int tailLength;
+
+        XxHasher(long seed) {
+            this.seed = seed;
+            v1 = seed + PRIME_1 + PRIME_2;
+            v2 = seed + PRIME_2;
+            v3 = seed;
+            v4 = seed - PRIME_1;
+        }
+
+        private void stripe(long a, long b, long c, long d) {
+            v1 = round(v1, a);
+            v2 = round(v2, b);
+            v3 = round(v3, c);
+            v4 = round(v4, d);
+        }
+
+        private void stripe(byte[] bytes, int offset) {
+            stripe(
+                    (long) LONGS.get(bytes, offset),
+                    (long) LONGS.get(bytes, offset + 8),
+                    (long) LONGS.get(bytes, offset + 16),
+                    (long) LONGS.get(bytes, offset + 24));
+        }
+
+        @Override
+        public void update(byte[] bytes, int offset, int length) {
+            total += length;
+            if (tailLength > 0) {
+                int n = Math.min(STRIPE - tailLength, length);
+                System.arraycopy(bytes, offset, tail, tailLength, n);
+                tailLength += n;
+                offset += n;
+                length -= n;
+                if (tailLength < STRIPE) {
+                    return;
+                }
+                stripe(tail, 0);
+                tailLength = 0;
+            }
+            for (; length >= STRIPE; offset += STRIPE, length -= STRIPE) {
+                stripe(bytes, offset);
+            }
+            System.arraycopy(bytes, offset, tail, 0, length);
+            tailLength = length;
+        }
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            total += buffer.remaining();
+            if (tailLength > 0) {
+                int n = Math.min(STRIPE - tailLength, buffer.remaining());
+                buffer.get(tail, tailLength, n);
+                tailLength += n;
+                if (tailLength < STRIPE) {
+                    return;
+                }
+                stripe(tail, 0);
+                tailLength = 0;
+            }
+
+            ByteBuffer le = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            int position = buffer.position();
+            for (int limit = buffer.limit(); limit - position >= STRIPE; position += STRIPE) {
+                stripe(le.getLong(position), le.getLong(position + 8), le.getLong(position + 16), le.getLong(position + 24));
+            }
+            buffer.position(position);
+            tailLength = buffer.remaining();
+            buffer.get(tail, 0, tailLength);
+        }
+
+        @Override
+        public byte[] digest() {
+            long hash;
+            if (total >= STRIPE) {
+                hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+                hash = merge(hash, v1);
+                hash = merge(hash, v2);
+                hash = merge(hash, v3);
+                hash = merge(hash, v4);
+            } else {
+                hash = seed + PRIME_5;
+            }
+            hash += total;
+
+            int i = 0;
+            for (; i + Long.BYTES <= tailLength; i += Long.BYTES) {
+                hash = Long.rotateLeft(hash ^ round(0, (long) LONGS.get(tail, i)), 27) * PRIME_1 + PRIME_4;
+            }
+            if (i + Integer.BYTES <= tailLength) {
+                hash = Long.rotateLeft(hash ^ ((int) INTS.get(tail, i) & 0xFFFF_FFFFL) * PRIME_1, 23) * PRIME_2 + PRIME_3;
+                i += Integer.BYTES;
+            }
+            for (; i < tailLength; i++) {
+                hash = Long.rotateLeft(hash ^ (tail[i] & 0xFF) * PRIME_5, 11) * PRIME_1;
+            }
+
+            hash ^= hash >>> 33;
+            hash *= PRIME_2;
+            hash ^= hash >>> 29;
+            hash *= PRIME_3;
+            hash ^= hash >>> 32;
+            return ByteBuffer.allocate(Long.BYTES).putLong(hash).array();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package info.kgeorgiy.java.advanced.crawler;
+
+import info.kgeorgiy.java.advanced.base.BaseTest;
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+/**
+ * Tests adaptive per-host concurrency.
+ * Tested class should have {@code (Downloader, int, int, int, P priority, A adaptive)} constructor,
+ * where adaptive class {@code A} has {@code (int initial, double decrease, double tolerance)} constructor
+ * and {@code control(int ceiling, LongSupplier clock)} method, returning control with
+ * {@code update(long start, long latency, IOException exception)} and {@code getLimit()} methods.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class AdaptiveCrawlerTest extends BaseTest {
+    private static final String URL = "https://itmo.ru";
+    private static final String HOST = "itmo.ru";
+    private static final int CEILING = 8;
+    private static final double DECREASE = 0.5;
+    private static final double TOLERANCE = 3;
+    private static final long LATENCY = 10_000_000;
+
+    @Test
+    public void test01_slowStart() {
+        final Control control = new Control(1);
+        Assert.assertEquals("Initial limit", 1, control.getLimit());
+        for (int i = 2; i <= CEILING; i++) {
+            Assert.assertEquals("Limit after success", i, control.success(LATENCY));
+        }
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals("Limit above ceiling", CEILING, control.success(LATENCY));
+        }
+        Assert.assertEquals("Initial limit above ceiling", CEILING, new Control(CEILING * 2).getLimit());
+    }
+
+    @Test
+    public void test02_errors() {
+        final Control control = ceiling();
+        int expected = CEILING;
+        while (expected > 1) {
+            expected = (int) Math.max(1, expected * DECREASE);
+            Assert.assertEquals("Limit after error", expected, control.failure(new IOException("Error")));
+        }
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("Limit below 1", 1, control.failure(new IOException("Error")));
+        }
+    }
+
+    @Test
+    public void test03_slow() {
+        final Control control = ceiling();
+        Assert.assertEquals("Tolerated latency", CEILING, control.success((long) (LATENCY * TOLERANCE)));
+        Assert.assertEquals("Limit after slow response", (int) (CEILING * DECREASE), control.success(LATENCY * 10));
+        Assert.assertEquals("Limit after fast response", (int) (CEILING * DECREASE), control.success(LATENCY));
+    }
+
+    @Test
+    public void test04_missing() {
+        final Control control = ceiling();
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("Missing page is not an error", CEILING, control.failure(new FileNotFoundException(URL)));
+        }
+    }
+
+    @Test
+    public void test05_inFlight() {
+        final Control control = ceiling();
+        // Requests started before a decrease have seen the old limit
+        final long[] starts = new long[CEILING];
+        for (int i = 0; i < CEILING; i++) {
+            starts[i] = control.start();
+        }
+        Assert.assertEquals("Limit after error", (int) (CEILING * DECREASE), control.finish(starts[0], new IOException("Error")));
+        for (int i = 1; i < CEILING; i++) {
+            Assert.assertEquals("Limit after stale error", (int) (CEILING * DECREASE), control.finish(starts[i], new IOException("Error")));
+        }
+        Assert.assertEquals("Limit after fresh error", (int) (CEILING * DECREASE * DECREASE), control.failure(new IOException("Error")));
+    }
+
+    @Test
+    public void test06_additive() {
+        final Control control = ceiling();
+        final int decreased = control.failure(new IOException("Error"));
+        // Limit grows by one per round trip of the current window
+        int window = 0;
+        for (int limit = decreased; limit < CEILING; limit++) {
+            window += limit;
+        }
+
+        int successes = 0;
+        int previous = decreased;
+        while (control.getLimit() < CEILING) {
+            final int limit = control.success(LATENCY);
+            Assert.assertTrue("Limit should grow by at most one: " + previous + " -> " + limit, previous <= limit && limit <= previous + 1);
+            previous = limit;
+            successes++;
+            Assert.assertTrue("Ceiling not reached after " + successes + " successes", successes <= window + CEILING);
+        }
+        Assert.assertTrue("Limit grows too fast: " + successes + " successes", successes >= window);
+        Assert.assertEquals("Limit above ceiling", CEILING, control.success(LATENCY));
+    }
+
+    @Test
+    public void test07_random() {
+        final Random random = new Random(8045702361L);
+        for (int ceiling = 1; ceiling <= CEILING; ceiling++) {
+            final Control control = new Control(1, ceiling);
+            for (int i = 0; i < 10_000; i++) {
+                final long latency = LATENCY / 2 + random.nextInt((int) LATENCY * 5);
+                final int limit = random.nextInt(10) == 0 ? control.failure(new IOException("Error")) : control.success(latency);
+                Assert.assertTrue("Limit out of range: " + limit, 1 <= limit && limit <= ceiling);
+            }
+        }
+    }
+
+    @Test
+    public void test08_crawl() throws IOException {
+        final ReplayDownloader replay = new ReplayDownloader(URL, 0, 0);
+        final int total = replay.expected(URL, 2).getDownloaded().size();
+        // Fixed latency, so that scheduling noise does not look like congestion
+        final Downloader steady = url -> {
+            try {
+                Thread.sleep(LATENCY / 1_000_000);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(url);
+            }
+            return replay.download(url);
+        };
+        try (final Crawler crawler = createInstance(steady, 1, CEILING / 2)) {
+            Assert.assertEquals("Pages", total, crawler.download(URL, 2).getDownloaded().size());
+            Assert.assertEquals("Limit after successes", CEILING / 2, hostLimit(crawler));
+        }
+
+        final ReplayDownloader root = new ReplayDownloader(URL, 0, 0);
+        final Downloader failing = url -> {
+            if (URLUtils.getURI(url).equals(URLUtils.getURI(URL))) {
+                return root.download(url);
+            }
+            throw new IOException("Overloaded " + url);
+        };
+        try (final Crawler crawler = createInstance(failing, CEILING / 2, CEILING / 2)) {
+            final Result result = crawler.download(URL, 2);
+            Assert.assertFalse("Errors expected", result.getErrors().isEmpty());
+            Assert.assertEquals("Limit after errors", 1, hostLimit(crawler));
+        }
+    }
+
+    private static Control ceiling() {
+        final Control control = new Control(CEILING);
+        control.success(LATENCY);
+        Assert.assertEquals("Initial limit", CEILING, control.getLimit());
+        return control;
+    }
+
+    private static Crawler createInstance(final Downloader downloader, final int initial, final int perHost) {
+        final Constructor<?> constructor = constructor();
+        try {
+            return (Crawler) constructor.newInstance(downloader, CEILING, CEILING, perHost, null, adaptive(initial, TOLERANCE * 10));
+        } catch (final InvocationTargetException e) {
+            throw new AssertionError(e.getCause());
+        } catch (final ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static int hostLimit(final Crawler crawler) {
+        final Object metrics = invoke(crawler, "getMetrics", new Class<?>[0]);
+        final Object host = invoke(metrics, "getHost", new Class<?>[]{String.class}, HOST);
+        return (int) invoke(host, "getLimit", new Class<?>[0]);
+    }
+
+    private static Object adaptive(final int initial, final double tolerance) {
+        try {
+            return constructor().getParameterTypes()[5]
+                    .getConstructor(int.class, double.class, double.class)
+                    .newInstance(initial, DECREASE, tolerance);
+        } catch (final InvocationTargetException e) {
+            throw new AssertionError(e.getCause());
+        } catch (final ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static Constructor<?> constructor() {
+        return Arrays.stream(loadClass().getConstructors())
+                .filter(c -> c.getParameterCount() == 6 && c.getParameterTypes()[0] == Downloader.class)
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("Missing (Downloader, int, int, int, priority, adaptive) constructor"));
+    }
+
+    private static Object invoke(final Object target, final String name, final Class<?>[] types, final Object... args) {
+        try {
+            return target.getClass().getMethod(name, types).invoke(target, args);
+        } catch (final InvocationTargetException e) {
+            throw new AssertionError(e.getCause());
+        } catch (final ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Feeds responses to adaptive control, advancing injected clock.
+     */
+    private static final class Control {
+        private final Object control;
+        private long now;
+
+        private Control(final int initial) {
+            this(initial, CEILING);
+        }
+
+        private Control(final int initial, final int ceiling) {
+            final LongSupplier clock = () -> now;
+            control = invoke(adaptive(initial, TOLERANCE), "control", new Class<?>[]{int.class, LongSupplier.class}, ceiling, clock);
+        }
+
+        private int getLimit() {
+            return (int) invoke(control, "getLimit", new Class<?>[0]);
+        }
+
+        private long start() {
+            return ++now;
+        }
+
+        private int finish(final long start, final IOException exception) {
+            now += LATENCY;
+            return update(start, LATENCY, exception);
+        }
+
+        private int success(final long latency) {
+            final long start = start();
+            now += latency;
+            return update(start, latency, null);
+        }
+
+        private int failure(final IOException exception) {
+            return finish(start(), exception);
+        }
+
+        private int update(final long start, final long latency, final IOException exception) {
+            return (int) invoke(
+                    control,
+                    "update",
+                    new Class<?>[]{long.class, long.class, IOException.class},
+                    start, latency, exception
+            );
+        }
+    }
+}
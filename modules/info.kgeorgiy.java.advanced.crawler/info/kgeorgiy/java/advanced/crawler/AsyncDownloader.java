@@ -0,0 +1,21 @@
+package info.kgeorgiy.java.advanced.crawler;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Downloads {@link info.kgeorgiy.java.advanced.crawler.Document documents} without blocking caller thread.
+ *
+ * @see HttpDownloader
+ */
+public interface AsyncDownloader extends Downloader {
+    /**
+     * Starts download of {@link info.kgeorgiy.java.advanced.crawler.Document} by
+     * <a href="http://tools.ietf.org/html/rfc3986">URL</a>.
+     *
+     * @param url URL to download.
+     * @return future of downloaded document, completed exceptionally with {@link IOException}
+     * if an error occurred.
+     */
+    CompletableFuture<Document> downloadAsync(final String url);
+}
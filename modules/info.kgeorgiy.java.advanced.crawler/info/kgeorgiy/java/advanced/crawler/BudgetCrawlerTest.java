@@ -0,0 +1,222 @@
+package info.kgeorgiy.java.advanced.crawler;
+
+import info.kgeorgiy.java.advanced.base.BaseTest;
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Tests time-boxed crawls: page, byte and time budgets and link priorities.
+ * Tested class should have {@code download(String url, int depth, B budget)} method,
+ * where budget class {@code B} has static {@code pages(int)}, {@code bytes(long)}
+ * and {@code time(Duration)} factory methods.
+ * Tested class should also have {@code (Downloader, int, int, int, P priority)} constructor,
+ * where priority class {@code P} has static {@code matching(Pattern, double)} factory method.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class BudgetCrawlerTest extends BaseTest {
+    private static final String URL = "https://itmo.ru";
+    private static final Pattern PREFERRED = Pattern.compile("^https?://(news|research)\\.");
+    private static final int PAGES = 20;
+    private static final int THREADS = 10;
+    private static final Duration SLACK = Duration.ofSeconds(2);
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(15);
+
+    @Test
+    public void test01_priority() throws IOException {
+        final Object budget = budget("pages", PAGES + 1);
+        final List<String> plain;
+        try (final Crawler crawler = EasyCrawlerTest.createInstance(new ReplayDownloader(URL, 0, 0), THREADS, THREADS, THREADS, Crawler.class)) {
+            plain = visited(download(crawler, URL, 2, budget));
+        }
+        final List<String> prioritized;
+        try (final Crawler crawler = createInstance(new ReplayDownloader(URL, 0, 0), priority(PREFERRED, 1))) {
+            prioritized = visited(download(crawler, URL, 2, budget));
+        }
+
+        Assert.assertEquals("Pages", PAGES, plain.size());
+        Assert.assertEquals("Pages", PAGES, prioritized.size());
+        Assert.assertTrue("Prioritized pages expected first: " + prioritized, prioritized.stream().allMatch(PREFERRED.asPredicate()));
+        Assert.assertFalse("Breadth-first order expected: " + plain, plain.stream().allMatch(PREFERRED.asPredicate()));
+    }
+
+    @Test
+    public void test02_pages() throws IOException {
+        for (final int pages : new int[]{0, 1, 10, 100}) {
+            final Result result = download(new ReplayDownloader(URL, 10, 10), 3, budget("pages", pages));
+            checkPartial(result, 3);
+            Assert.assertEquals("Pages", pages, result.getDownloaded().size() + result.getErrors().size());
+        }
+    }
+
+    @Test
+    public void test03_bytes() throws IOException {
+        final int size = 1000;
+        for (final int pages : new int[]{1, 10, 100}) {
+            final Result result = download(new SizedDownloader(new ReplayDownloader(URL, 10, 10), size), 3, budget("bytes", (long) pages * size));
+            checkPartial(result, 3);
+            // Pages already in progress are completed when budget is spent
+            final int downloaded = result.getDownloaded().size();
+            Assert.assertTrue("Too few pages: " + downloaded, downloaded >= pages);
+            Assert.assertTrue("Too many pages: " + downloaded, downloaded <= pages + THREADS);
+        }
+    }
+
+    @Test
+    public void test04_deadline() throws IOException {
+        final Duration limit = Duration.ofMillis(300);
+        final long start = System.nanoTime();
+        final Result result = download(new ReplayDownloader(URL, 50, 10), 3, budget("time", limit));
+        final Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        checkPartial(result, 3);
+        Assert.assertTrue("Partial result expected in time, took " + elapsed, elapsed.compareTo(limit.plus(SLACK)) < 0);
+        Assert.assertTrue("Partial result expected", total(result) < total(new ReplayDownloader(URL, 0, 0).expected(URL, 3)));
+    }
+
+    @Test
+    public void test05_close() throws IOException {
+        final Downloader hanging = url -> {
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new InterruptedIOException("Interrupted " + url);
+        };
+        final Crawler crawler = EasyCrawlerTest.createInstance(hanging, THREADS, THREADS, THREADS, Crawler.class);
+        final long start = System.nanoTime();
+        final Result result = download(crawler, URL, 2, budget("time", Duration.ofMillis(100)));
+        Assert.assertEquals("Partial result", 0, total(result));
+        Assert.assertTrue("Partial result expected in time", Duration.ofNanos(System.nanoTime() - start).compareTo(SLACK) < 0);
+
+        final long closing = System.nanoTime();
+        crawler.close();
+        final Duration elapsed = Duration.ofNanos(System.nanoTime() - closing);
+        Assert.assertTrue("Close should be bounded, took " + elapsed, elapsed.compareTo(CLOSE_TIMEOUT) < 0);
+    }
+
+    private static Result download(final Downloader downloader, final int depth, final Object budget) {
+        try (final Crawler crawler = EasyCrawlerTest.createInstance(downloader, THREADS, THREADS, THREADS, Crawler.class)) {
+            return download(crawler, URL, depth, budget);
+        }
+    }
+
+    private static void checkPartial(final Result result, final int depth) throws IOException {
+        final Result expected = new ReplayDownloader(URL, 0, 0).expected(URL, depth);
+        Assert.assertTrue("Unexpected pages", expected.getDownloaded().containsAll(result.getDownloaded()));
+        Assert.assertTrue("Unexpected errors", expected.getErrors().keySet().containsAll(result.getErrors().keySet()));
+    }
+
+    private static int total(final Result result) {
+        return result.getDownloaded().size() + result.getErrors().size();
+    }
+
+    // Pages of the second level
+    private static List<String> visited(final Result result) {
+        final List<String> pages = new ArrayList<>(result.getDownloaded());
+        pages.addAll(result.getErrors().keySet());
+        Assert.assertTrue("Start page expected", pages.remove(URL));
+        return pages;
+    }
+
+    private static Result download(final Crawler crawler, final String url, final int depth, final Object budget) {
+        try {
+            return (Result) method("download", 3).invoke(crawler, url, depth, budget);
+        } catch (final InvocationTargetException e) {
+            throw new AssertionError(e.getCause());
+        } catch (final ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static Object budget(final String factory, final Object limit) {
+        return call(method("download", 3).getParameterTypes()[2], factory, limit);
+    }
+
+    private static Object priority(final Pattern pattern, final double score) {
+        final Class<?> type = constructor().getParameterTypes()[4];
+        return call(type, "matching", pattern, score);
+    }
+
+    private static Crawler createInstance(final Downloader downloader, final Object priority) {
+        try {
+            return (Crawler) constructor().newInstance(downloader, THREADS, THREADS, THREADS, priority);
+        } catch (final InvocationTargetException e) {
+            throw new AssertionError(e.getCause());
+        } catch (final ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static Constructor<?> constructor() {
+        return Arrays.stream(loadClass().getConstructors())
+                .filter(c -> c.getParameterCount() == 5 && c.getParameterTypes()[0] == Downloader.class)
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("Missing (Downloader, int, int, int, priority) constructor"));
+    }
+
+    private static Method method(final String name, final int parameters) {
+        return Arrays.stream(loadClass().getMethods())
+                .filter(m -> name.equals(m.getName()) && m.getParameterCount() == parameters)
+                .filter(m -> m.getParameterTypes()[parameters - 1].getPackage() == loadClass().getPackage())
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("Missing " + name + " method with budget"));
+    }
+
+    private static Object call(final Class<?> type, final String factory, final Object... args) {
+        final Class<?>[] types = Arrays.stream(args)
+                .map(arg -> arg instanceof Integer ? int.class
+                        : arg instanceof Long ? long.class
+                        : arg instanceof Double ? double.class
+                        : arg.getClass())
+                .toArray(Class<?>[]::new);
+        try {
+            return type.getMethod(factory, types).invoke(null, args);
+        } catch (final InvocationTargetException e) {
+            throw new AssertionError(e.getCause());
+        } catch (final ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Reports fixed size of downloaded documents.
+     */
+    private static final class SizedDownloader implements Downloader {
+        private final Downloader downloader;
+        private final long size;
+
+        private SizedDownloader(final Downloader downloader, final long size) {
+            this.downloader = downloader;
+            this.size = size;
+        }
+
+        @Override
+        public Document download(final String url) throws IOException {
+            final Document document = downloader.download(url);
+            return new Document() {
+                @Override
+                public List<String> extractLinks() throws IOException {
+                    return document.extractLinks();
+                }
+
+                @Override
+                public long size() {
+                    return size;
+                }
+            };
+        }
+    }
+}
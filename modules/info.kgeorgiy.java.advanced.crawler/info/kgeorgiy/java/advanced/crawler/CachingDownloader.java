@@ -1,25 +1,41 @@
 package info.kgeorgiy.java.advanced.crawler;
 
 import java.io.*;
+import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URLConnection;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Collections;
+import java.time.Duration;
+import java.util.zip.DeflaterOutputStream;
 
 /**
  * Downloads document from the Web and stores them in storage directory.
+ * Documents are kept in append-only segment files of the storage directory
+ * and located via in-memory index. Concurrent downloads of the same document,
+ * including ones by other downloaders sharing the storage directory, are coalesced into single request.
+ * <p>
+ * Each stored document has fetch time and HTTP validators ({@code ETag} and {@code Last-Modified}).
+ * Documents older than time-to-live are revalidated by conditional requests and
+ * downloaded again only if they were changed. Stale documents are served while revalidation
+ * fails with a transport or server error, and replaced by failures on client errors, such as {@code 404}.
+ * <p>
+ * Bodies of documents may be stored deflated. Deflated bodies are inflated on the fly during link extraction,
+ * while document size is the size of the body as downloaded.
  *
  * @author Georgiy Korneev (kgeorgiy@kgeorgiy.info)
  */
-public class CachingDownloader implements Downloader {
-    private static final byte[] OK_MARKER = {'+'};
-    private static final byte[] FAIL_MARKER = {'-'};
+public class CachingDownloader implements Downloader, Closeable {
+    private static final byte OK_MARKER = '+';
+    private static final byte DEFLATED_MARKER = '*';
+    private static final byte FAIL_MARKER = '-';
     private static final int READ_TIMEOUT = 30_000;
+    private static final int MAX_SIZE_HINT = 16 << 20;
 
-    private final Path directory;
+    private final SegmentStore store;
+    private final long ttl;
+    private final boolean compress;
 
     /**
      * Creates a new downloader storing documents in temporary directory.
@@ -32,24 +48,53 @@ public class CachingDownloader implements Downloader {
 
     /**
      * Creates a new downloader storing documents in specified directory.
+     * Stored documents never expire.
      *
      * @param directory storage directory.
      *
      * @throws IOException if an error occurred.
      */
     public CachingDownloader(final Path directory) throws IOException {
-        this.directory = directory;
+        this(directory, null);
+    }
+
+    /**
+     * Creates a new downloader storing documents in specified directory.
+     *
+     * @param directory storage directory.
+     * @param ttl time-to-live of stored documents or {@code null} if they never expire.
+     *
+     * @throws IOException if an error occurred.
+     */
+    public CachingDownloader(final Path directory, final Duration ttl) throws IOException {
+        this(directory, ttl, false);
+    }
+
+    /**
+     * Creates a new downloader storing documents in specified directory.
+     *
+     * @param directory storage directory.
+     * @param ttl time-to-live of stored documents or {@code null} if they never expire.
+     * @param compress whether bodies of downloaded documents should be stored deflated.
+     *
+     * @throws IOException if an error occurred.
+     */
+    public CachingDownloader(final Path directory, final Duration ttl, final boolean compress) throws IOException {
         if (!Files.exists(directory)) {
             Files.createDirectories(directory);
         }
         if (!Files.isDirectory(directory)) {
             throw new IOException(directory + " is not a directory");
         }
+        this.ttl = ttl == null ? Long.MAX_VALUE : ttl.toMillis();
+        this.compress = compress;
+        this.store = SegmentStore.open(directory);
     }
 
     /**
-     * Downloads document and stores it to the storage directory. An error during
-     * download may result in incomplete files in storage directory.
+     * Downloads document and stores it to the storage directory. Documents are stored
+     * after successful download only, so an error during download leaves no incomplete entries.
+     * If the document is being downloaded by another thread, its download is awaited.
      *
      * @param url URL of the document to download.
      *
@@ -60,41 +105,215 @@ public class CachingDownloader implements Downloader {
     @Override
     public Document download(final String url) throws IOException {
         final URI uri = URLUtils.getURI(url);
-        final Path file = directory.resolve(URLEncoder.encode(uri.toString(), StandardCharsets.UTF_8));
-        if (Files.notExists(file)) {
-            System.out.println("Downloading " + url);
-            try {
-                final URLConnection connection = uri.toURL().openConnection();
-                connection.setReadTimeout(READ_TIMEOUT);
-                try (final InputStream is = connection.getInputStream()) {
-                    Files.copy(new SequenceInputStream(new ByteArrayInputStream(OK_MARKER), is), file);
+        final String key = uri.toString();
+        ByteBuffer data = store.get(key);
+        if (data != null && isFresh(data)) {
+            System.out.println("Already downloaded " + url);
+        } else {
+            data = store.get(key, this::isFresh, stale -> load(uri, stale == null ? null : Entry.decode(stale)));
+        }
+
+        final Entry entry = Entry.decode(data);
+        if (entry.failed) {
+            try (final ObjectInputStream ois = new ObjectInputStream(entry.body())) {
+                throw (IOException) ois.readObject();
+            } catch (final ClassNotFoundException e) {
+                throw new AssertionError(e);
+            }
+        }
+        return new MemoizedDocument(uri, entry.body, entry.deflated, entry.size);
+    }
+
+    private boolean isFresh(final ByteBuffer data) {
+        return System.currentTimeMillis() - data.getLong(data.position() + 1) <= ttl;
+    }
+
+    private ByteBuffer load(final URI uri, final Entry stale) throws IOException {
+        final long fetched = System.currentTimeMillis();
+        int status = -1;
+        try {
+            final URLConnection connection = uri.toURL().openConnection();
+            connection.setReadTimeout(READ_TIMEOUT);
+            if (stale != null && !stale.failed) {
+                System.out.println("Revalidating " + uri);
+                if (stale.etag != null) {
+                    connection.setRequestProperty("If-None-Match", stale.etag);
                 }
-            } catch (final IOException e) {
-                final ByteArrayOutputStream out = new ByteArrayOutputStream();
-                out.write(FAIL_MARKER);
-                try (final ObjectOutputStream oos = new ObjectOutputStream(out)) {
-                    oos.writeObject(e);
+                if (stale.lastModified != null) {
+                    connection.setRequestProperty("If-Modified-Since", stale.lastModified);
                 }
-                Files.copy(new ByteArrayInputStream(out.toByteArray()), file);
-                throw e;
+            } else {
+                System.out.println("Downloading " + uri);
             }
-            System.out.println("Downloaded " + uri);
-        } else {
-            System.out.println("Already downloaded " + url);
-            try (final InputStream is = Files.newInputStream(file)) {
-                if (is.read() == FAIL_MARKER[0]) {
-                    try (final ObjectInputStream ois = new ObjectInputStream(is)) {
-                        throw (IOException) ois.readObject();
-                    } catch (final ClassNotFoundException e) {
-                        throw new AssertionError(e);
-                    }
+            if (connection instanceof HttpURLConnection) {
+                status = ((HttpURLConnection) connection).getResponseCode();
+                if (status == HttpURLConnection.HTTP_NOT_MODIFIED && stale != null && !stale.failed) {
+                    System.out.println("Not modified " + uri);
+                    ((HttpURLConnection) connection).disconnect();
+                    return Entry.encode(stale.marker, fetched, stale.etag, stale.lastModified, stale.size, stale.body);
                 }
             }
+
+            // Body is written right after the header, so the entry is assembled without copies
+            final EntryBuffer entry = new EntryBuffer(Math.min(Math.max(connection.getContentLength(), 0), MAX_SIZE_HINT) + 64);
+            entry.header(
+                    compress ? DEFLATED_MARKER : OK_MARKER,
+                    fetched,
+                    connection.getHeaderField("ETag"),
+                    connection.getHeaderField("Last-Modified")
+            );
+            try (final InputStream is = connection.getInputStream();
+                 final OutputStream os = compress ? new DeflaterOutputStream(entry) : entry) {
+                entry.size(is.transferTo(os));
+            }
+            System.out.println("Downloaded " + uri);
+            return entry.toByteBuffer();
+        } catch (final IOException e) {
+            if (stale != null && !stale.failed && isTransient(e, status)) {
+                // Stale document is kept and revalidated again on the next request
+                System.out.println("Revalidation failed " + uri + ": " + e.getMessage());
+                return Entry.encode(stale.marker, stale.fetched, stale.etag, stale.lastModified, stale.size, stale.body);
+            }
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (final ObjectOutputStream oos = new ObjectOutputStream(out)) {
+                oos.writeObject(e);
+            }
+            return Entry.encode(FAIL_MARKER, fetched, null, null, out.size(), ByteBuffer.wrap(out.toByteArray()));
         }
-        return () -> {
-            try (final InputStream is = Files.newInputStream(file)) {
-                return is.read() == FAIL_MARKER[0] ? Collections.emptyList() : URLUtils.extractLinks(uri, is);
+    }
+
+    /**
+     * Tests whether revalidation error is a transport or server error rather than a response
+     * telling that the document is gone, so the stale document may still be served.
+     */
+    private static boolean isTransient(final IOException e, final int status) {
+        return !(e instanceof FileNotFoundException) && (status < 400 || status >= 500);
+    }
+
+    /**
+     * Compacts storage, dropping superseded entries.
+     *
+     * @throws IOException if an error occurred.
+     */
+    public void compact() throws IOException {
+        store.compact();
+    }
+
+    /**
+     * Closes storage files.
+     *
+     * @throws IOException if an error occurred.
+     */
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+
+    /**
+     * Stored document: marker, fetch time, validators, size of deflated body before deflation, and body.
+     */
+    private static final class Entry {
+        private final byte marker;
+        private final boolean failed;
+        private final boolean deflated;
+        private final long fetched;
+        private final String etag;
+        private final String lastModified;
+        private final long size;
+        private final ByteBuffer body;
+
+        private Entry(
+                final byte marker,
+                final long fetched,
+                final String etag,
+                final String lastModified,
+                final long size,
+                final ByteBuffer body
+        ) {
+            this.marker = marker;
+            this.failed = marker == FAIL_MARKER;
+            this.deflated = marker == DEFLATED_MARKER;
+            this.fetched = fetched;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.body = body;
+        }
+
+        private InputStream body() {
+            return new ByteArrayInputStream(body.array(), body.arrayOffset() + body.position(), body.remaining());
+        }
+
+        private static ByteBuffer encode(
+                final byte marker,
+                final long fetched,
+                final String etag,
+                final String lastModified,
+                final long size,
+                final ByteBuffer body
+        ) throws IOException {
+            final EntryBuffer entry = new EntryBuffer(body.remaining() + 64);
+            entry.header(marker, fetched, etag, lastModified);
+            entry.size(size);
+            entry.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+            return entry.toByteBuffer();
+        }
+
+        private static Entry decode(final ByteBuffer data) {
+            final ByteArrayInputStream bytes = new ByteArrayInputStream(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            try (final DataInputStream in = new DataInputStream(bytes)) {
+                final byte marker = in.readByte();
+                final long fetched = in.readLong();
+                final String etag = in.readUTF();
+                final String lastModified = in.readUTF();
+                final long size = marker == DEFLATED_MARKER ? in.readLong() : -1;
+                final int bodyLength = bytes.available();
+                final ByteBuffer body = data.duplicate().position(data.limit() - bodyLength).slice();
+                return new Entry(
+                        marker,
+                        fetched,
+                        etag.isEmpty() ? null : etag,
+                        lastModified.isEmpty() ? null : lastModified,
+                        size < 0 ? bodyLength : size,
+                        body
+                );
+            } catch (final IOException e) {
+                throw new UncheckedIOException("Corrupted entry", e);
+            }
+        }
+    }
+
+    /**
+     * Buffer of an encoded entry. Size of deflated body is known only after the body is written,
+     * so it is patched into the header.
+     */
+    private static final class EntryBuffer extends ByteArrayOutputStream {
+        private int sizePosition = -1;
+
+        private EntryBuffer(final int capacity) {
+            super(capacity);
+        }
+
+        private void header(final byte marker, final long fetched, final String etag, final String lastModified) throws IOException {
+            final DataOutputStream out = new DataOutputStream(this);
+            out.writeByte(marker);
+            out.writeLong(fetched);
+            out.writeUTF(etag == null ? "" : etag);
+            out.writeUTF(lastModified == null ? "" : lastModified);
+            if (marker == DEFLATED_MARKER) {
+                sizePosition = count;
+                out.writeLong(-1);
+            }
+        }
+
+        private void size(final long size) {
+            if (sizePosition >= 0) {
+                ByteBuffer.wrap(buf).putLong(sizePosition, size);
             }
-        };
+        }
+
+        private ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
     }
 }
@@ -0,0 +1,166 @@
+package info.kgeorgiy.java.advanced.crawler;
+
+import info.kgeorgiy.java.advanced.base.BaseTest;
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Tests crawls resumed from checkpoints.
+ * Tested class should have {@code download(String url, int depth, Path checkpoint)},
+ * {@code resume(Path checkpoint)} and {@code setCheckpointInterval(Duration interval)} methods.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class CheckpointCrawlerTest extends BaseTest {
+    private static final String URL = "https://itmo.ru";
+    private static final int DEPTH = 3;
+    private static final Duration INTERVAL = Duration.ofMillis(20);
+
+    @Test
+    public void test01_completed() throws IOException {
+        final Path checkpoint = checkpoint();
+        final Result actual;
+        try (final Crawler crawler = createInstance(new ReplayDownloader(URL, 10, 10))) {
+            actual = (Result) invoke(crawler, "download", URL, DEPTH, checkpoint);
+        }
+        check(actual);
+        Assert.assertTrue("Missing checkpoint", Files.exists(checkpoint));
+    }
+
+    @Test
+    public void test02_interrupted() throws Exception {
+        interrupted(2);
+        interrupted(DEPTH);
+    }
+
+    @Test
+    public void test03_killed() throws Exception {
+        killed(2);
+        killed(DEPTH);
+    }
+
+    private static void interrupted(final int level) throws Exception {
+        final Path checkpoint = checkpoint();
+        final CountingDownloader counting = new CountingDownloader(new ReplayDownloader(URL, 10, 10));
+        try (final Crawler crawler = createInstance(counting)) {
+            final Thread crawl = new Thread(() -> invoke(crawler, "download", URL, DEPTH, checkpoint));
+            crawl.start();
+            counting.await(middle(level));
+            crawl.interrupt();
+            crawl.join();
+        }
+        resume(checkpoint);
+    }
+
+    private static void killed(final int level) throws Exception {
+        final Path checkpoint = checkpoint();
+        final Path killed = checkpoint.resolveSibling("killed");
+        final CountingDownloader counting = new CountingDownloader(new ReplayDownloader(URL, 10, 10));
+        try (final Crawler crawler = createInstance(counting)) {
+            final Thread crawl = new Thread(() -> invoke(crawler, "download", URL, DEPTH, checkpoint));
+            crawl.start();
+            counting.await(middle(level));
+            // Latest periodic checkpoint is all that is left after the process is killed
+            Files.copy(checkpoint, killed, StandardCopyOption.REPLACE_EXISTING);
+            Assert.assertTrue("Crawl finished before it was killed", crawl.isAlive());
+            crawl.join();
+        }
+        resume(killed);
+    }
+
+    private static void resume(final Path checkpoint) throws IOException {
+        final CountingDownloader counting = new CountingDownloader(new ReplayDownloader(URL, 10, 10));
+        final Result actual;
+        try (final Crawler crawler = createInstance(counting)) {
+            actual = (Result) invoke(crawler, "resume", checkpoint);
+        }
+        check(actual);
+        Assert.assertTrue(
+                "Resumed crawl downloaded " + counting.count.get() + " of " + total(DEPTH) + " pages",
+                counting.count.get() < total(DEPTH)
+        );
+    }
+
+    private static void check(final Result actual) throws IOException {
+        final Result expected = new ReplayDownloader(URL, 0, 0).expected(URL, DEPTH);
+        // Errors are restored from checkpoints, so they are compared by messages
+        EasyCrawlerTest.checkResult(
+                new Result(expected.getDownloaded(), Map.of()),
+                new Result(actual.getDownloaded(), Map.of())
+        );
+        Assert.assertEquals("Errors", messages(expected), messages(actual));
+    }
+
+    private static Map<String, String> messages(final Result result) {
+        return result.getErrors().entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> String.valueOf(e.getValue().getMessage())));
+    }
+
+    private static int middle(final int level) throws IOException {
+        return (total(level - 1) + total(level)) / 2;
+    }
+
+    private static int total(final int depth) throws IOException {
+        final Result expected = new ReplayDownloader(URL, 0, 0).expected(URL, depth);
+        return expected.getDownloaded().size() + expected.getErrors().size();
+    }
+
+    private static Path checkpoint() throws IOException {
+        return Files.createTempDirectory(CheckpointCrawlerTest.class.getName()).resolve("checkpoint");
+    }
+
+    private static Crawler createInstance(final Downloader downloader) {
+        final Crawler crawler = EasyCrawlerTest.createInstance(downloader, 10, 10, 10, Crawler.class);
+        invoke(crawler, "setCheckpointInterval", INTERVAL);
+        return crawler;
+    }
+
+    private static Object invoke(final Crawler crawler, final String name, final Object... args) {
+        final Class<?>[] types = new Class<?>[args.length];
+        for (int i = 0; i < args.length; i++) {
+            types[i] = args[i] instanceof Integer ? int.class : args[i] instanceof Path ? Path.class : args[i].getClass();
+        }
+        try {
+            return crawler.getClass().getMethod(name, types).invoke(crawler, args);
+        } catch (final InvocationTargetException e) {
+            throw new AssertionError(e.getCause());
+        } catch (final ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Counts started downloads.
+     */
+    private static final class CountingDownloader implements Downloader {
+        private final Downloader downloader;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private CountingDownloader(final Downloader downloader) {
+            this.downloader = downloader;
+        }
+
+        @Override
+        public Document download(final String url) throws IOException {
+            count.incrementAndGet();
+            return downloader.download(url);
+        }
+
+        private void await(final int count) throws InterruptedException {
+            while (this.count.get() < count) {
+                Thread.sleep(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package info.kgeorgiy.java.advanced.crawler;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Benchmark of {@link Crawler} implementations over sites recorded for {@link ReplayDownloader}.
+ * <p>
+ * Every scenario is run several times after a warm-up run, and the median run is reported:
+ * wall time, throughput, average and peak number of concurrent downloads and extractions
+ * (with utilization of the configured limits) and peak number of live threads.
+ * Results are compared with the expected ones, so broken schedules are not reported as fast.
+ * </p>
+ */
+public final class CrawlerBenchmark {
+    private static final int DEFAULT_RUNS = 3;
+    private static final List<String> DEFAULT_SCENARIOS = List.of(
+            "http://www.kgeorgiy.info,3,10,10,3,10,10",
+            "http://www.kgeorgiy.info,3,100,10,100,10,10",
+            "https://itmo.ru,2,10,10,3,10,10",
+            "https://itmo.ru,2,100,10,3,10,10",
+            "https://itmo.ru,2,100,10,10,10,10",
+            "https://itmo.ru,2,100,50,100,10,10",
+            "https://itmo.ru,3,100,20,10,10,1",
+            "http://nerc.itmo.ru/subregions/index.html,3,10,10,100,100,100"
+    );
+
+    private CrawlerBenchmark() {
+    }
+
+    /**
+     * Runs benchmark.
+     *
+     * @param args crawler class name, optional number of measured runs and scenarios in
+     *             {@code url,depth,downloaders,extractors,perHost,downloadDelay,extractDelay} format.
+     */
+    public static void main(final String... args) {
+        if (args == null || args.length < 1 || Arrays.stream(args).anyMatch(Objects::isNull)) {
+            System.out.println("Usage:");
+            System.out.format("    java -cp . -p . -m info.kgeorgiy.java.advanced.crawler/%s Solution.class.name [runs [scenario...]]%n",
+                    CrawlerBenchmark.class.getName());
+            System.out.println("    scenario: url,depth,downloaders,extractors,perHost,downloadDelay,extractDelay");
+            return;
+        }
+
+        try {
+            final Class<?> crawler = Class.forName(args[0]);
+            final int runs = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_RUNS;
+            final List<String> scenarios = args.length > 2
+                    ? Arrays.asList(args).subList(2, args.length)
+                    : DEFAULT_SCENARIOS;
+
+            System.out.format("%-60s %6s %6s %8s %9s %17s %17s %7s%n",
+                    "scenario", "pages", "errors", "time,ms", "pages/s", "downloads avg/max", "extracts avg/max", "threads");
+            for (final String scenario : scenarios) {
+                System.out.println(Scenario.parse(scenario).run(crawler, runs));
+            }
+        } catch (final ClassNotFoundException e) {
+            System.err.println("Crawler class not found: " + e.getMessage());
+        } catch (final NumberFormatException e) {
+            System.err.println("Couldn't parse number: " + e.getMessage());
+        } catch (final IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+        } catch (final IOException e) {
+            System.err.println("Couldn't load site: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Benchmark scenario.
+     */
+    private static final class Scenario {
+        private final String url;
+        private final int depth;
+        private final int downloaders;
+        private final int extractors;
+        private final int perHost;
+        private final int downloadDelay;
+        private final int extractDelay;
+
+        private Scenario(
+                final String url,
+                final int depth,
+                final int downloaders,
+                final int extractors,
+                final int perHost,
+                final int downloadDelay,
+                final int extractDelay
+        ) {
+            this.url = url;
+            this.depth = depth;
+            this.downloaders = downloaders;
+            this.extractors = extractors;
+            this.perHost = perHost;
+            this.downloadDelay = downloadDelay;
+            this.extractDelay = extractDelay;
+        }
+
+        static Scenario parse(final String scenario) {
+            final String[] parts = scenario.split(",");
+            if (parts.length != 7) {
+                throw new IllegalArgumentException("Invalid scenario " + scenario);
+            }
+            return new Scenario(
+                    parts[0],
+                    Integer.parseInt(parts[1]),
+                    Integer.parseInt(parts[2]),
+                    Integer.parseInt(parts[3]),
+                    Integer.parseInt(parts[4]),
+                    Integer.parseInt(parts[5]),
+                    Integer.parseInt(parts[6])
+            );
+        }
+
+        String run(final Class<?> crawler, final int runs) throws IOException {
+            final Result expected = new ReplayDownloader(url, 0, 0).expected(url, depth);
+
+            run(crawler, expected);
+            final List<Measurement> measurements = new ArrayList<>();
+            for (int i = 0; i < runs; i++) {
+                measurements.add(run(crawler, expected));
+            }
+            measurements.sort(Comparator.comparingLong(m -> m.nanos));
+            final Measurement median = measurements.get(measurements.size() / 2);
+
+            final String name = String.format("%s d=%d %d/%d/%d %d/%d",
+                    url.replaceFirst("^https?://", ""), depth,
+                    downloaders, extractors, perHost, downloadDelay, extractDelay);
+            return String.format("%-60s %s", name, median.format(downloaders, extractors));
+        }
+
+        private Measurement run(final Class<?> crawler, final Result expected) throws IOException {
+            final MeasuringDownloader downloader = new MeasuringDownloader(new ReplayDownloader(url, downloadDelay, extractDelay));
+            final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            threads.resetPeakThreadCount();
+
+            final long start = System.nanoTime();
+            final Result result;
+            try (final Crawler instance = create(crawler, downloader)) {
+                result = instance.download(url, depth);
+            }
+            final long nanos = System.nanoTime() - start;
+
+            final boolean valid = Set.copyOf(expected.getDownloaded()).equals(Set.copyOf(result.getDownloaded()))
+                    && expected.getErrors().keySet().equals(result.getErrors().keySet());
+            return new Measurement(result, valid, nanos, downloader, threads.getPeakThreadCount());
+        }
+
+        private Crawler create(final Class<?> crawler, final Downloader downloader) {
+            try {
+                final Constructor<?> constructor = crawler.getConstructor(Downloader.class, int.class, int.class, int.class);
+                return (Crawler) constructor.newInstance(downloader, downloaders, extractors, perHost);
+            } catch (final InvocationTargetException e) {
+                throw new IllegalArgumentException("Couldn't create crawler: " + e.getCause(), e.getCause());
+            } catch (final ReflectiveOperationException | ClassCastException e) {
+                throw new IllegalArgumentException("Couldn't create crawler: " + e, e);
+            }
+        }
+    }
+
+    /**
+     * Results of a single run.
+     */
+    private static final class Measurement {
+        private final int pages;
+        private final int errors;
+        private final boolean valid;
+        private final long nanos;
+        private final double downloads;
+        private final int peakDownloads;
+        private final double extractions;
+        private final int peakExtractions;
+        private final int peakThreads;
+
+        Measurement(final Result result, final boolean valid, final long nanos, final MeasuringDownloader downloader, final int peakThreads) {
+            this.pages = result.getDownloaded().size();
+            this.errors = result.getErrors().size();
+            this.valid = valid;
+            this.nanos = nanos;
+            this.downloads = (double) downloader.downloads.busy.sum() / nanos;
+            this.peakDownloads = downloader.downloads.peak.get();
+            this.extractions = (double) downloader.extractions.busy.sum() / nanos;
+            this.peakExtractions = downloader.extractions.peak.get();
+            this.peakThreads = peakThreads;
+        }
+
+        String format(final int downloaders, final int extractors) {
+            return String.format("%6d %6d %8d %9.1f %17s %17s %7d%s",
+                    pages, errors, nanos / 1_000_000, (pages + errors) * 1e9 / nanos,
+                    concurrency(downloads, peakDownloads, downloaders),
+                    concurrency(extractions, peakExtractions, extractors),
+                    peakThreads,
+                    valid ? "" : " INVALID");
+        }
+
+        private static String concurrency(final double average, final int peak, final int limit) {
+            final String utilization = limit == Integer.MAX_VALUE ? "" : String.format(" %3.0f%%", average * 100 / limit);
+            return String.format("%.1f/%d%s", average, peak, utilization);
+        }
+    }
+
+    /**
+     * Concurrent activity counter.
+     */
+    private static final class Activity {
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger peak = new AtomicInteger();
+        private final LongAdder busy = new LongAdder();
+
+        long start() {
+            peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+            return System.nanoTime();
+        }
+
+        void finish(final long start) {
+            busy.add(System.nanoTime() - start);
+            active.decrementAndGet();
+        }
+    }
+
+    /**
+     * Downloader measuring concurrency of downloads and link extractions.
+     */
+    private static final class MeasuringDownloader implements Downloader {
+        private final Downloader downloader;
+        private final Activity downloads = new Activity();
+        private final Activity extractions = new Activity();
+
+        MeasuringDownloader(final Downloader downloader) {
+            this.downloader = downloader;
+        }
+
+        @Override
+        public Document download(final String url) throws IOException {
+            final long start = downloads.start();
+            final Document document;
+            try {
+                document = downloader.download(url);
+            } finally {
+                downloads.finish(start);
+            }
+
+            return () -> {
+                final long extractStart = extractions.start();
+                try {
+                    return document.extractLinks();
+                } finally {
+                    extractions.finish(extractStart);
+                }
+            };
+        }
+    }
+}
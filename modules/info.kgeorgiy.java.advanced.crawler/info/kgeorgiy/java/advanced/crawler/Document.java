@@ -17,4 +17,13 @@ public interface Document {
      * @throws IOException if an error occurred.
      */
     List<String> extractLinks() throws IOException;
+
+    /**
+     * Returns size of downloaded document.
+     *
+     * @return size of the document in bytes or {@code -1} if it is unknown.
+     */
+    default long size() {
+        return -1;
+    }
 }
@@ -6,6 +6,7 @@ import java.io.IOException;
  * Downloads {@link info.kgeorgiy.java.advanced.crawler.Document documents}.
  *
  * @see CachingDownloader
+ * @see HttpDownloader
  *
  * @author Georgiy Korneev (kgeorgiy@kgeorgiy.info)
  */
@@ -0,0 +1,187 @@
+package info.kgeorgiy.java.advanced.crawler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import info.kgeorgiy.java.advanced.base.BaseTest;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests asynchronous downloads by {@link HttpDownloader} from an embedded HTTP server.
+ * Pages form a binary tree spread over two host names of the loopback interface.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class HttpCrawlerTest extends BaseTest {
+    private static final int PAGES = 100;
+    private static final int DELAY = 20;
+    private static final String[] HOSTS = {"localhost", "127.0.0.1"};
+
+    private static HttpServer server;
+    private static ExecutorService executor;
+    private static final ConcurrentMap<String, AtomicInteger> active = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, AtomicInteger> peak = new ConcurrentHashMap<>();
+
+    @BeforeClass
+    public static void startServer() throws IOException {
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress(0), 0);
+        server.createContext("/", HttpCrawlerTest::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void test01_singlePage() {
+        test(1, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void test02_pagesAndErrors() {
+        test(7, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void test03_limitDownloads() {
+        test(5, 3, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void test04_limitedConnectionsPerHost() {
+        test(6, Integer.MAX_VALUE, 2, 3);
+    }
+
+    @Test
+    public void test05_singleConnectionPerHost() {
+        test(5, Integer.MAX_VALUE, Integer.MAX_VALUE, 1);
+    }
+
+    private static void test(final int depth, final int downloaders, final int extractors, final int perHost) {
+        active.clear();
+        peak.clear();
+
+        final Result actual;
+        try (final Crawler crawler = EasyCrawlerTest.createInstance(
+                new HttpDownloader(), downloaders, extractors, perHost, Crawler.class
+        )) {
+            actual = crawler.download(url(1), depth);
+        }
+
+        final Set<String> downloaded = new HashSet<>();
+        final Set<String> errors = new HashSet<>();
+        expected(depth, downloaded, errors);
+        Assert.assertEquals("Downloaded OK", downloaded, Set.copyOf(actual.getDownloaded()));
+        Assert.assertEquals("Downloaded with errors", errors, actual.getErrors().keySet());
+        for (final Map.Entry<String, IOException> entry : actual.getErrors().entrySet()) {
+            Assert.assertTrue("Not found expected for " + entry.getKey(), entry.getValue() instanceof FileNotFoundException);
+        }
+
+        final int limit = Math.min(downloaders, perHost);
+        for (final Map.Entry<String, AtomicInteger> entry : peak.entrySet()) {
+            Assert.assertTrue(
+                    "Too many connections to " + entry.getKey() + ": " + entry.getValue(),
+                    entry.getValue().get() <= limit
+            );
+        }
+    }
+
+    private static void expected(final int depth, final Set<String> downloaded, final Set<String> errors) {
+        List<Integer> level = List.of(1);
+        for (int d = 1; d <= depth; d++) {
+            final List<Integer> next = new ArrayList<>();
+            for (final int page : level) {
+                downloaded.add(url(page));
+                if (d < depth) {
+                    next.addAll(children(page));
+                    if (isBroken(page)) {
+                        errors.add(missing(page));
+                    }
+                }
+            }
+            level = next;
+        }
+    }
+
+    private static void handle(final HttpExchange exchange) throws IOException {
+        final String host = exchange.getRequestHeaders().getFirst("Host");
+        final int current = active.computeIfAbsent(host, h -> new AtomicInteger()).incrementAndGet();
+        peak.computeIfAbsent(host, h -> new AtomicInteger()).accumulateAndGet(current, Math::max);
+        try {
+            Thread.sleep(DELAY);
+            final String[] path = exchange.getRequestURI().getPath().split("/");
+            final int page = path.length == 3 && "page".equals(path[1]) ? Integer.parseInt(path[2]) : -1;
+            if (page < 1 || page > PAGES) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            final byte[] body = page(page).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (final OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            active.get(host).decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private static String page(final int page) {
+        final StringBuilder sb = new StringBuilder("<html><body><h1>Page ").append(page).append("</h1>");
+        for (final int child : children(page)) {
+            sb.append("<a href=\"").append(url(child)).append("\">Page ").append(child).append("</a>");
+        }
+        if (isBroken(page)) {
+            sb.append("<a href=\"").append(missing(page)).append("\">Missing</a>");
+        }
+        return sb.append("</body></html>").toString();
+    }
+
+    private static List<Integer> children(final int page) {
+        final List<Integer> children = new ArrayList<>();
+        for (int child = 2 * page; child <= Math.min(2 * page + 1, PAGES); child++) {
+            children.add(child);
+        }
+        return children;
+    }
+
+    private static boolean isBroken(final int page) {
+        return page % 4 == 0;
+    }
+
+    private static String url(final int page) {
+        return "http://" + HOSTS[page % HOSTS.length] + ":" + server.getAddress().getPort() + "/page/" + page;
+    }
+
+    private static String missing(final int page) {
+        return "http://" + HOSTS[page % HOSTS.length] + ":" + server.getAddress().getPort() + "/missing/" + page;
+    }
+}
@@ -0,0 +1,99 @@
+package info.kgeorgiy.java.advanced.crawler;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Downloads documents from the Web using non-blocking {@link HttpClient}.
+ * Connections are kept alive and reused for subsequent requests to the same host.
+ */
+public class HttpDownloader implements AsyncDownloader {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient client;
+
+    /**
+     * Creates a new downloader with default HTTP client.
+     */
+    public HttpDownloader() {
+        this(HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(TIMEOUT)
+                .build());
+    }
+
+    /**
+     * Creates a new downloader with specified HTTP client.
+     *
+     * @param client HTTP client to use.
+     */
+    public HttpDownloader(final HttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Downloads document, blocking until download completes.
+     *
+     * @param url URL of the document to download.
+     *
+     * @return downloaded document.
+     *
+     * @throws IOException if an error occurred.
+     */
+    @Override
+    public Document download(final String url) throws IOException {
+        try {
+            return downloadAsync(url).get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while downloading " + url);
+        } catch (final ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<Document> downloadAsync(final String url) {
+        final HttpRequest request;
+        final URI uri;
+        try {
+            uri = URLUtils.getURI(url);
+            request = HttpRequest.newBuilder(uri).timeout(TIMEOUT).GET().build();
+        } catch (final MalformedURLException e) {
+            return CompletableFuture.failedFuture(e);
+        } catch (final IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(new MalformedURLException(e.getMessage()));
+        }
+
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    final int status = response.statusCode();
+                    if (status == 404 || status == 410) {
+                        throw new CompletionException(new FileNotFoundException(url));
+                    } else if (status >= 400) {
+                        throw new CompletionException(new IOException(
+                                "Server returned HTTP response code: " + status + " for URL: " + url
+                        ));
+                    }
+                    return new MemoizedDocument(uri, ByteBuffer.wrap(response.body()));
+                });
+    }
+
+    private static IOException unwrap(final Throwable cause) {
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            return unwrap(cause.getCause());
+        }
+        return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    }
+}
@@ -0,0 +1,428 @@
+package info.kgeorgiy.java.advanced.crawler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming scanner of {@code href} attributes of anchor tags in HTML document.
+ * Document is scanned byte-by-byte without building a tree. Comments and contents of
+ * raw text elements, such as {@code script} and {@code style}, are skipped.
+ * <p>
+ * Document encoding is detected in the same way as by {@link org.jsoup.Jsoup#parse(InputStream, String, String)}:
+ * byte order mark, then the first {@code <meta charset>} or {@code <meta http-equiv="content-type">} tag,
+ * then UTF-8. Attribute values are kept as raw bytes until the end of the document and decoded
+ * with the detected encoding, with basic character references resolved. Declared encodings
+ * that are not ASCII-compatible, such as UTF-16, are ignored, as the document could not have been
+ * scanned byte-by-byte otherwise.
+ */
+final class LinkScanner {
+    private static final int BUFFER_SIZE = 8192;
+    // Longest known references are numeric ones, such as "&#x10FFFF;"
+    private static final int MAX_REFERENCE_LENGTH = 32;
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+    private static final Pattern CONTENT_CHARSET = Pattern.compile("(?i)\\bcharset=\\s*(?:\"|')?([^\\s,;\"']*)");
+    private static final String ASCII_PROBE = "<a href=\"/?#&;:%=\">azAZ09-_.~</a>";
+    private static final Set<String> RAW_TEXT = Set.of(
+            "script", "style", "title", "textarea", "xmp", "iframe", "noembed", "noframes"
+    );
+
+    private static final String[] ANCHOR = {"href"};
+    private static final String[] META = {"http-equiv", "content", "charset"};
+
+    private final InputStream is;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private byte[] value = new byte[256];
+    private int valueLength;
+    private final StringBuilder name = new StringBuilder();
+
+    private final List<byte[]> hrefs = new ArrayList<>();
+    private byte[] base;
+    private Charset charset;
+
+    private LinkScanner(final InputStream is) {
+        this.is = is;
+    }
+
+    /**
+     * Scans document for {@code href} values of anchor tags and the first {@code base} tag.
+     *
+     * @param is document stream.
+     *
+     * @return scanned document.
+     *
+     * @throws IOException if an error occurred.
+     */
+    static LinkScanner scan(final InputStream is) throws IOException {
+        final LinkScanner scanner = new LinkScanner(is);
+        scanner.scan();
+        return scanner;
+    }
+
+    /**
+     * Returns raw {@code href} values of anchor tags in document order.
+     *
+     * @return decoded {@code href} values.
+     */
+    List<String> getHrefs() {
+        final List<String> result = new ArrayList<>(hrefs.size());
+        for (final byte[] href : hrefs) {
+            result.add(decode(href, getCharset()));
+        }
+        return result;
+    }
+
+    /**
+     * Returns raw {@code href} value of the first {@code base} tag.
+     *
+     * @return decoded {@code href} value or {@code null} if there is no {@code base} tag.
+     */
+    String getBase() {
+        return base == null ? null : decode(base, getCharset());
+    }
+
+    /**
+     * Returns detected document encoding.
+     *
+     * @return document encoding.
+     */
+    Charset getCharset() {
+        return charset == null ? StandardCharsets.UTF_8 : charset;
+    }
+
+    private void scan() throws IOException {
+        skipBom();
+        int c;
+        while ((c = read()) >= 0) {
+            if (c == '<') {
+                tag();
+            }
+        }
+    }
+
+    private void skipBom() throws IOException {
+        for (int i = 0; i < UTF8_BOM.length; i++) {
+            if (peek() != (UTF8_BOM[i] & 0xff)) {
+                return;
+            }
+            read();
+        }
+        // Byte order mark takes precedence over declarations
+        charset = StandardCharsets.UTF_8;
+    }
+
+    private void tag() throws IOException {
+        final int c = peek();
+        if (c == '!') {
+            read();
+            if (peek() == '-') {
+                read();
+                if (peek() == '-') {
+                    read();
+                    skipComment();
+                    return;
+                }
+            }
+            skipTag();
+        } else if (c == '/' || c == '?') {
+            skipTag();
+        } else if (isLetter(c)) {
+            final String name = readName();
+            if ("a".equals(name)) {
+                final byte[] href = attributes(ANCHOR)[0];
+                if (href != null) {
+                    hrefs.add(href);
+                }
+            } else if ("base".equals(name)) {
+                final byte[] href = attributes(ANCHOR)[0];
+                if (base == null) {
+                    base = href;
+                }
+            } else if ("meta".equals(name)) {
+                meta(attributes(META));
+            } else {
+                attributes(null);
+                if (RAW_TEXT.contains(name)) {
+                    skipRawText(name);
+                }
+            }
+        }
+    }
+
+    private void meta(final byte[][] attributes) {
+        final boolean contentType = attributes[0] != null
+                && "content-type".equalsIgnoreCase(decode(attributes[0], StandardCharsets.ISO_8859_1));
+        if (charset != null || !contentType && attributes[2] == null) {
+            return;
+        }
+
+        // Only the first declaration is considered, even if it is invalid
+        charset = StandardCharsets.UTF_8;
+        Charset declared = null;
+        if (contentType && attributes[1] != null) {
+            declared = contentCharset(decode(attributes[1], StandardCharsets.ISO_8859_1));
+        }
+        if (declared == null && attributes[2] != null) {
+            declared = charset(decode(attributes[2], StandardCharsets.ISO_8859_1));
+        }
+        if (declared != null && isAsciiCompatible(declared)) {
+            charset = declared;
+        }
+    }
+
+    private static Charset contentCharset(final String content) {
+        final Matcher matcher = CONTENT_CHARSET.matcher(content);
+        if (!matcher.find()) {
+            return null;
+        }
+        final String name = matcher.group(1).trim().replace("charset=", "");
+        final Charset charset = charset(name);
+        return charset != null ? charset : charset(name.toUpperCase(Locale.ENGLISH));
+    }
+
+    private static Charset charset(final String name) {
+        try {
+            return Charset.isSupported(name) ? Charset.forName(name) : null;
+        } catch (final IllegalCharsetNameException e) {
+            return null;
+        }
+    }
+
+    private static boolean isAsciiCompatible(final Charset charset) {
+        return ASCII_PROBE.equals(new String(ASCII_PROBE.getBytes(StandardCharsets.US_ASCII), charset));
+    }
+
+    private String readName() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        while (isNameChar(peek())) {
+            sb.append((char) Character.toLowerCase(read()));
+        }
+        return sb.toString();
+    }
+
+    private byte[][] attributes(final String[] wanted) throws IOException {
+        final byte[][] result = new byte[wanted == null ? 0 : wanted.length][];
+        while (true) {
+            int c = skipWhitespace();
+            if (c < 0 || c == '>') {
+                read();
+                return result;
+            }
+            if (c == '/' || c == '=') {
+                read();
+                continue;
+            }
+
+            // Duplicate attributes override previous ones, as in the parsed extractor
+            final int index = matchName(wanted);
+            final boolean store = index >= 0;
+            c = skipWhitespace();
+            if (c == '=') {
+                read();
+                skipWhitespace();
+                readValue(store);
+                if (store) {
+                    result[index] = Arrays.copyOf(value, valueLength);
+                }
+            } else if (store) {
+                result[index] = new byte[0];
+            }
+        }
+    }
+
+    private int matchName(final String[] wanted) throws IOException {
+        name.setLength(0);
+        int c;
+        while ((c = peek()) >= 0 && !isWhitespace(c) && c != '=' && c != '>' && c != '/') {
+            read();
+            if (wanted != null) {
+                name.append((char) Character.toLowerCase(c));
+            }
+        }
+        if (wanted != null) {
+            for (int i = 0; i < wanted.length; i++) {
+                if (wanted[i].contentEquals(name)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void readValue(final boolean store) throws IOException {
+        valueLength = 0;
+        final int first = peek();
+        if (first == '"' || first == '\'') {
+            read();
+            int c;
+            while ((c = read()) >= 0 && c != first) {
+                append(store, c);
+            }
+        } else {
+            int c;
+            while ((c = peek()) >= 0 && !isWhitespace(c) && c != '>') {
+                append(store, read());
+            }
+        }
+    }
+
+    private void append(final boolean store, final int c) {
+        if (store) {
+            if (valueLength == value.length) {
+                value = Arrays.copyOf(value, value.length * 2);
+            }
+            value[valueLength++] = (byte) c;
+        }
+    }
+
+    private static String decode(final byte[] value, final Charset charset) {
+        final String raw = new String(value, charset);
+        return raw.indexOf('&') < 0 ? raw : decodeReferences(raw);
+    }
+
+    private static String decodeReferences(final String raw) {
+        final StringBuilder sb = new StringBuilder(raw.length());
+        int i = 0;
+        while (i < raw.length()) {
+            final char c = raw.charAt(i);
+            final int end = c == '&' ? referenceEnd(raw, i + 1) : -1;
+            if (end < 0) {
+                sb.append(c);
+                i++;
+                continue;
+            }
+
+            final String reference = resolveReference(raw.substring(i + 1, end));
+            if (reference == null) {
+                sb.append(c);
+                i++;
+            } else {
+                sb.append(reference);
+                i = end + 1;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int referenceEnd(final String raw, final int start) {
+        final int limit = Math.min(raw.length(), start + MAX_REFERENCE_LENGTH + 1);
+        for (int i = start; i < limit; i++) {
+            if (raw.charAt(i) == ';') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String resolveReference(final String name) {
+        switch (name) {
+            case "amp": return "&";
+            case "lt": return "<";
+            case "gt": return ">";
+            case "quot": return "\"";
+            case "apos": return "'";
+            case "nbsp": return "\u00a0";
+            default:
+                if (name.length() > 1 && name.charAt(0) == '#') {
+                    try {
+                        final boolean hex = name.charAt(1) == 'x' || name.charAt(1) == 'X';
+                        final int code = hex
+                                ? Integer.parseInt(name.substring(2), 16)
+                                : Integer.parseInt(name.substring(1));
+                        return Character.isValidCodePoint(code) ? new String(Character.toChars(code)) : null;
+                    } catch (final NumberFormatException e) {
+                        return null;
+                    }
+                }
+                return null;
+        }
+    }
+
+    private void skipComment() throws IOException {
+        int dashes = 0;
+        int c;
+        while ((c = read()) >= 0) {
+            if (c == '>' && dashes >= 2) {
+                return;
+            }
+            dashes = c == '-' ? dashes + 1 : 0;
+        }
+    }
+
+    private void skipTag() throws IOException {
+        int c;
+        while ((c = read()) >= 0 && c != '>') {
+            // Skip
+        }
+    }
+
+    private void skipRawText(final String name) throws IOException {
+        int c;
+        while ((c = read()) >= 0) {
+            if (c == '<' && peek() == '/') {
+                read();
+                int index = 0;
+                while (index < name.length() && Character.toLowerCase(peek()) == name.charAt(index)) {
+                    read();
+                    index++;
+                }
+                if (index == name.length() && !isNameChar(peek())) {
+                    skipTag();
+                    return;
+                }
+            }
+        }
+    }
+
+    private int skipWhitespace() throws IOException {
+        int c;
+        while (isWhitespace(c = peek())) {
+            read();
+        }
+        return c;
+    }
+
+    private int read() throws IOException {
+        final int c = peek();
+        if (c >= 0) {
+            position++;
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit) {
+            final int read = is.read(buffer, 0, buffer.length);
+            if (read <= 0) {
+                return -1;
+            }
+            position = 0;
+            limit = read;
+        }
+        return buffer[position] & 0xff;
+    }
+
+    private static boolean isLetter(final int c) {
+        return 'a' <= c && c <= 'z' || 'A' <= c && c <= 'Z';
+    }
+
+    private static boolean isNameChar(final int c) {
+        return isLetter(c) || '0' <= c && c <= '9' || c == '-' || c == ':';
+    }
+
+    private static boolean isWhitespace(final int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+}
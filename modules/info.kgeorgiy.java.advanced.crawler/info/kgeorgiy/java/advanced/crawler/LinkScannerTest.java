@@ -0,0 +1,178 @@
+package info.kgeorgiy.java.advanced.crawler;
+
+import info.kgeorgiy.java.advanced.base.BaseTest;
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Compares {@link URLUtils#extractLinksStreaming(URI, java.io.InputStream) streaming}
+ * and {@link URLUtils#extractLinksParsed(URI, java.io.InputStream) parsed} link extraction.
+ * Tested class is not used.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class LinkScannerTest extends BaseTest {
+    private static final URI URL = URI.create("https://example.com/dir/page.html");
+    private static final Charset WINDOWS_1251 = Charset.forName("windows-1251");
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    private static final String[] SITES = {
+            "https://itmo.ru",
+            "http://www.kgeorgiy.info",
+            "https://de.ifmo.ru",
+            "http://nerc.itmo.ru/subregions/index.html",
+    };
+
+    @Test
+    public void test01_unquoted() throws IOException {
+        test(
+                "<a href=one.html>1</a><a href=/two.html title=x>2</a><a title=y href=three.html>3</a>",
+                "https://example.com/dir/one.html", "https://example.com/two.html", "https://example.com/dir/three.html"
+        );
+        test(
+                "<A HREF='one.html'>1</A><a\nhref\n=\n\"two.html\"\n>2</a><a href>3</a><a href=\"\">4</a>",
+                "https://example.com/dir/one.html", "https://example.com/dir/two.html",
+                "https://example.com/dir/", "https://example.com/dir/"
+        );
+        test("<a name=x>1</a><a href=\"a.html\" href=\"b.html\">2</a>", "https://example.com/dir/b.html");
+    }
+
+    @Test
+    public void test02_entities() throws IOException {
+        test(
+                "<a href=\"page.html?a=1&amp;b=2\">1</a><a href=\"&#47;slash\">2</a><a href=\"&#x2F;hex&#x2f;\">3</a>",
+                "https://example.com/dir/page.html?a=1&b=2", "https://example.com/slash", "https://example.com/hex/"
+        );
+        test(
+                "<a href='page.html?q=&apos;x&apos;&#59;'>1</a><a href=\"page.html?a=1&amp;amp;b=2\">2</a><a href=\"&lt;x&gt;\">3</a>",
+                "https://example.com/dir/page.html?q='x';", "https://example.com/dir/page.html?a=1&amp;b=2"
+        );
+    }
+
+    @Test
+    public void test03_base() throws IOException {
+        test(
+                "<head><base href=\"https://other.com/base/\"></head><a href=\"page.html\">1</a><a href=\"/root\">2</a>",
+                "https://other.com/base/page.html", "https://other.com/root"
+        );
+        test(
+                "<a href=\"page.html\">1</a><base href=\"/base/\"><base href=\"/ignored/\">",
+                "https://example.com/base/page.html"
+        );
+        test("<base target=_blank><base href=sub/><a href=page.html>1</a>", "https://example.com/dir/sub/page.html");
+        test("<base href=\"mailto:someone\"><a href=\"page.html\">1</a><a href=\"https://example.com/\">2</a>",
+                "https://example.com/");
+    }
+
+    @Test
+    public void test04_comments() throws IOException {
+        test(
+                "<!-- <a href=\"comment.html\"> --><a href=\"one.html\">1</a>"
+                        + "<!----><!-- a -- b --><a href=\"two.html\">2</a><!DOCTYPE html><? <a href=x.html> ?>",
+                "https://example.com/dir/one.html", "https://example.com/dir/two.html"
+        );
+    }
+
+    @Test
+    public void test05_rawText() throws IOException {
+        test(
+                "<script>document.write('<a href=\"script.html\">')</script><a href=\"one.html\">1</a>"
+                        + "<style>a::after { content: '<a href=style.html>' }</style>"
+                        + "<SCRIPT type=\"text/javascript\">if (a </scripts> b) {}</SCRIPT><a href=\"two.html\">2</a>"
+                        + "<title><a href=title.html></title><textarea><a href=textarea.html></textarea>",
+                "https://example.com/dir/one.html", "https://example.com/dir/two.html"
+        );
+    }
+
+    @Test
+    public void test06_charsets() throws IOException {
+        final String href = "/\u0434\u043e\u043a\u0443\u043c\u0435\u043d\u0442.pdf";
+        final String expected = "https://example.com" + href;
+        final String anchor = "<a href=\"" + href + "\">1</a>";
+        test(bytes("<meta charset=\"windows-1251\">" + anchor, WINDOWS_1251), expected);
+        test(bytes("<meta http-equiv=\"Content-Type\" content=\"text/html; charset=windows-1251\">" + anchor, WINDOWS_1251), expected);
+        test(bytes(anchor + "<meta http-equiv=content-type content='text/html;charset=\"cp1251\"'>", WINDOWS_1251), expected);
+        test(bytes("<meta charset=\"utf-8\"><meta charset=\"windows-1251\">" + anchor, StandardCharsets.UTF_8), expected);
+        test(bytes("<meta http-equiv=content-type content=\"text/html; charset=unknown\"><meta charset=\"windows-1251\">" + anchor, StandardCharsets.UTF_8), expected);
+        test(bytes(anchor, StandardCharsets.UTF_8), expected);
+
+        final ByteArrayOutputStream bom = new ByteArrayOutputStream();
+        bom.write(UTF8_BOM);
+        bom.write(bytes(anchor, StandardCharsets.UTF_8));
+        test(bom.toByteArray(), expected);
+    }
+
+    @Test
+    public void test07_fixtures() throws IOException {
+        for (final String site : SITES) {
+            final ReplayDownloader downloader = new ReplayDownloader(site, 0, 0);
+            int pages = 0;
+            for (final String url : downloader.expected(site, 2).getDownloaded()) {
+                final List<String> links = downloader.getPage(url).links;
+                final Charset charset = pages % 2 == 0 && links.stream().allMatch(WINDOWS_1251.newEncoder()::canEncode)
+                        ? WINDOWS_1251
+                        : StandardCharsets.UTF_8;
+                compare(URLUtils.getURI(url), bytes(page(links, charset, pages), charset));
+                pages++;
+            }
+            System.err.println("    " + site + ": " + pages + " pages compared");
+        }
+    }
+
+    private static String page(final List<String> links, final Charset charset, final int variant) {
+        final StringBuilder sb = new StringBuilder("<!DOCTYPE html>\n<html><head>");
+        if (variant % 3 == 0) {
+            sb.append("<meta charset=\"").append(charset.name()).append("\">");
+        } else {
+            sb.append("<meta http-equiv=\"Content-Type\" content=\"text/html; charset=").append(charset.name()).append("\">");
+        }
+        sb.append("<script>var a = '<a href=\"/script\">';</script></head>\n<body>\n<!-- <a href=\"/comment\"> -->\n");
+        for (int i = 0; i < links.size(); i++) {
+            final String link = links.get(i).replace("&", "&amp;");
+            switch ((variant + i) % 3) {
+                case 0:
+                    sb.append("<a href=\"").append(link.replace("\"", "&quot;")).append("\">");
+                    break;
+                case 1:
+                    sb.append("<a class=link href='").append(link.replace("'", "&#39;")).append("' title=x>");
+                    break;
+                default:
+                    if (link.chars().anyMatch(c -> c == ' ' || c == '>' || c == '"' || c == '\'' || c == '`' || c == '=')) {
+                        sb.append("<a href=\"").append(link.replace("\"", "&quot;")).append("\">");
+                    } else {
+                        sb.append("<a href=").append(link).append(">");
+                    }
+            }
+            sb.append("link ").append(i).append("</a>\n");
+        }
+        return sb.append("</body></html>\n").toString();
+    }
+
+    private static void test(final String html, final String... expected) throws IOException {
+        test(bytes(html, StandardCharsets.UTF_8), expected);
+    }
+
+    private static void test(final byte[] html, final String... expected) throws IOException {
+        Assert.assertEquals("Links", List.of(expected), compare(URL, html));
+    }
+
+    private static List<String> compare(final URI url, final byte[] html) throws IOException {
+        final List<String> parsed = URLUtils.extractLinksParsed(url, new ByteArrayInputStream(html));
+        final List<String> streaming = URLUtils.extractLinksStreaming(url, new ByteArrayInputStream(html));
+        Assert.assertEquals("Streaming and parsed links differ for " + url, parsed, streaming);
+        return streaming;
+    }
+
+    private static byte[] bytes(final String html, final Charset charset) {
+        return html.getBytes(charset);
+    }
+}
@@ -0,0 +1,70 @@
+package info.kgeorgiy.java.advanced.crawler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Document backed by in-memory data, optionally deflated. Deflated data is
+ * inflated while links are extracted. Extracted links are memoized
+ * and the data is released after extraction.
+ */
+final class MemoizedDocument implements Document {
+    private final URI uri;
+    private final boolean deflated;
+    private final long size;
+    private ByteBuffer data;
+    private List<String> links;
+
+    /**
+     * Creates a new document.
+     *
+     * @param uri base URI for relative links.
+     * @param data document contents, backed by array.
+     */
+    MemoizedDocument(final URI uri, final ByteBuffer data) {
+        this(uri, data, false, data.remaining());
+    }
+
+    /**
+     * Creates a new document.
+     *
+     * @param uri base URI for relative links.
+     * @param data document contents, backed by array.
+     * @param deflated whether contents are deflated.
+     * @param size size of the contents before deflation.
+     */
+    MemoizedDocument(final URI uri, final ByteBuffer data, final boolean deflated, final long size) {
+        this.uri = uri;
+        this.data = data;
+        this.deflated = deflated;
+        this.size = size;
+    }
+
+    @Override
+    public synchronized List<String> extractLinks() throws IOException {
+        if (links == null) {
+            final InputStream bytes = new ByteArrayInputStream(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            try (final InputStream is = deflated ? new InflaterInputStream(bytes) : bytes) {
+                links = Collections.unmodifiableList(URLUtils.extractLinks(uri, is));
+            }
+            data = null;
+        }
+        return links;
+    }
+
+    /**
+     * Returns size of the document data, as downloaded.
+     *
+     * @return size of the document data in bytes.
+     */
+    @Override
+    public long size() {
+        return size;
+    }
+}
@@ -0,0 +1,206 @@
+package info.kgeorgiy.java.advanced.crawler;
+
+import info.kgeorgiy.java.advanced.base.BaseTest;
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Tests crawler metrics.
+ * Tested class should have {@code getMetrics()} method, returning metrics with
+ * {@code getPages()}, {@code getErrors()}, {@code getLinks()}, {@code getFrontier()},
+ * {@code getHost(String)}, {@code getHosts()}, {@code getDownloaders()} and
+ * {@code report(Duration, Consumer<String>)} methods.
+ * Host metrics should have {@code getCount()}, {@code getErrors()}, {@code getInFlight()},
+ * {@code getPeakInFlight()}, {@code getHistogram()}, {@code getMeanLatency()} and
+ * {@code getLatency(double)} methods, with histogram bucket {@code i} holding
+ * latencies in {@code [2^(i - 1), 2^i)} microseconds.
+ * Pool metrics should have {@code getBusy()} and {@code getUtilization()} methods.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class MetricsCrawlerTest extends BaseTest {
+    private static final String URL = "https://itmo.ru";
+    private static final String HOST = "itmo.ru";
+    private static final int PER_HOST = 2;
+    private static final int LATENCY = 20;
+
+    @Test
+    public void test01_counters() throws IOException {
+        final ReplayDownloader downloader = new ReplayDownloader(URL, 10, 10);
+        try (final Crawler crawler = createInstance(downloader, 10)) {
+            final Result result = crawler.download(URL, 2);
+            final Object metrics = get(crawler, "getMetrics");
+            Assert.assertEquals("Pages", result.getDownloaded().size(), (long) get(metrics, "getPages"));
+            Assert.assertEquals("Errors", result.getErrors().size(), (long) get(metrics, "getErrors"));
+            Assert.assertEquals("Links", downloader.getPage(URL).links.size(), (long) get(metrics, "getLinks"));
+            Assert.assertEquals("Frontier", 0, (long) get(metrics, "getFrontier"));
+            // Pool tasks may still be finishing after the crawl returns
+            final Object pool = get(metrics, "getDownloaders");
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            while ((int) get(pool, "getBusy") > 0 && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            Assert.assertEquals("Busy downloaders", 0, (int) get(pool, "getBusy"));
+        }
+    }
+
+    @Test
+    public void test02_hosts() throws IOException {
+        try (final Crawler crawler = createInstance(new ReplayDownloader(URL, 10, 10), 10)) {
+            final Result result = crawler.download(URL, 2);
+            final Object metrics = get(crawler, "getMetrics");
+            long count = 0;
+            long errors = 0;
+            for (final Map.Entry<?, ?> entry : ((Map<?, ?>) get(metrics, "getHosts")).entrySet()) {
+                final Object host = entry.getValue();
+                final long hostCount = get(host, "getCount");
+                long histogram = 0;
+                for (final long bucket : (long[]) get(host, "getHistogram")) {
+                    histogram += bucket;
+                }
+                Assert.assertEquals("Histogram of " + entry.getKey(), hostCount, histogram);
+                Assert.assertEquals("In flight to " + entry.getKey(), 0, (int) get(host, "getInFlight"));
+                final int peak = get(host, "getPeakInFlight");
+                Assert.assertTrue("Peak in flight to " + entry.getKey() + ": " + peak, 1 <= peak && peak <= PER_HOST);
+                count += hostCount;
+                errors += (long) get(host, "getErrors");
+            }
+            Assert.assertEquals("Downloads", result.getDownloaded().size() + result.getErrors().size(), count);
+            Assert.assertEquals("Errors", result.getErrors().size(), errors);
+        }
+    }
+
+    @Test
+    public void test03_inFlight() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger started = new AtomicInteger();
+        final ReplayDownloader replay = new ReplayDownloader(URL, 0, 0);
+        final Downloader blocking = url -> {
+            if (started.getAndIncrement() > 0) {
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(url);
+                }
+            }
+            return replay.download(url);
+        };
+
+        try (final Crawler crawler = createInstance(blocking, 10)) {
+            final Thread crawl = new Thread(() -> crawler.download(URL, 2));
+            crawl.start();
+            final Object metrics = get(crawler, "getMetrics");
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            Object host;
+            while ((host = get(metrics, "getHost", HOST)) == null || (int) get(host, "getInFlight") < PER_HOST) {
+                Assert.assertTrue("Downloads expected to start", System.nanoTime() < deadline);
+                Thread.sleep(1);
+            }
+            Thread.sleep(50);
+
+            Assert.assertEquals("In flight", PER_HOST, (int) get(host, "getInFlight"));
+            Assert.assertEquals("Peak in flight", PER_HOST, (int) get(host, "getPeakInFlight"));
+            Assert.assertTrue("Waiting pages expected in frontier", (long) get(metrics, "getFrontier") > 0);
+            Assert.assertTrue("Busy downloaders expected", (int) get(get(metrics, "getDownloaders"), "getBusy") > 0);
+
+            release.countDown();
+            crawl.join();
+            Assert.assertEquals("In flight", 0, (int) get(host, "getInFlight"));
+            Assert.assertEquals("Frontier", 0, (long) get(metrics, "getFrontier"));
+        }
+    }
+
+    @Test
+    public void test04_histogram() throws IOException {
+        try (final Crawler crawler = createInstance(slow(new ReplayDownloader(URL, 0, 0)), 10)) {
+            crawler.download(URL, 2);
+            final Object host = get(get(crawler, "getMetrics"), "getHost", HOST);
+            final long[] histogram = get(host, "getHistogram");
+            for (int i = 0; (1L << i) * 1000 < LATENCY * 1000_000L && i < histogram.length; i++) {
+                Assert.assertEquals("Bucket below " + (1L << i) + "us", 0, histogram[i]);
+            }
+            final Duration mean = get(host, "getMeanLatency");
+            final Duration median = get(host, "getLatency", 0.5);
+            final Duration max = get(host, "getLatency", 1.0);
+            Assert.assertTrue("Mean latency " + mean, mean.toMillis() >= LATENCY);
+            Assert.assertTrue("Median latency " + median, median.toMillis() >= LATENCY);
+            Assert.assertTrue("Latency quantiles should be ordered", median.compareTo(max) <= 0);
+        }
+    }
+
+    @Test
+    public void test05_utilization() throws IOException {
+        try (final Crawler crawler = createInstance(slow(new ReplayDownloader(URL, 0, 0)), 2)) {
+            crawler.download(URL, 2);
+            final double utilization = get(get(get(crawler, "getMetrics"), "getDownloaders"), "getUtilization");
+            Assert.assertTrue("Downloaders utilization " + utilization, 0.5 < utilization && utilization <= 1);
+        }
+    }
+
+    @Test
+    public void test06_report() throws Exception {
+        final AtomicInteger reports = new AtomicInteger();
+        final Consumer<String> log = report -> reports.incrementAndGet();
+        final Duration period = Duration.ofMillis(50);
+        final Crawler crawler = createInstance(new ReplayDownloader(URL, 0, 0), 10);
+        try {
+            final Object metrics = get(crawler, "getMetrics");
+            get(metrics, "report", period, log);
+            get(metrics, "report", period, log);
+            Thread.sleep(period.toMillis() * 10 + period.toMillis() / 2);
+            Assert.assertTrue("Repeated report calls should not multiply reports: " + reports.get(), reports.get() <= 12);
+            Assert.assertTrue("Reports expected: " + reports.get(), reports.get() >= 5);
+        } finally {
+            crawler.close();
+        }
+
+        final int closed = reports.get();
+        Thread.sleep(period.toMillis() * 4);
+        Assert.assertEquals("No reports after close", closed, reports.get());
+    }
+
+    private static Downloader slow(final Downloader downloader) {
+        return url -> {
+            try {
+                Thread.sleep(LATENCY);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(url);
+            }
+            return downloader.download(url);
+        };
+    }
+
+    private static Crawler createInstance(final Downloader downloader, final int downloaders) {
+        return EasyCrawlerTest.createInstance(downloader, downloaders, 10, PER_HOST, Crawler.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T get(final Object target, final String name, final Object... args) {
+        final Class<?>[] types = new Class<?>[args.length];
+        for (int i = 0; i < args.length; i++) {
+            types[i] = args[i] instanceof Double ? double.class
+                    : args[i] instanceof Consumer ? Consumer.class
+                    : args[i].getClass();
+        }
+        try {
+            return (T) target.getClass().getMethod(name, types).invoke(target, args);
+        } catch (final InvocationTargetException e) {
+            throw new AssertionError(e.getCause());
+        } catch (final ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
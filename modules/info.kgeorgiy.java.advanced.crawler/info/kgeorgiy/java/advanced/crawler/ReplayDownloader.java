@@ -2,51 +2,78 @@ package info.kgeorgiy.java.advanced.crawler;
 
 import java.io.*;
 import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
-import java.util.zip.GZIPInputStream;
 
 /**
  * @author Georgiy Korneev (kgeorgiy@kgeorgiy.info)
  */
 public class ReplayDownloader implements Downloader {
-    protected final ConcurrentMap<String, Page> pages;
+    private final ReplaySnapshot pages;
     private final ConcurrentMap<String, Boolean> downloaded = new ConcurrentHashMap<>();
     private final AtomicInteger errors = new AtomicInteger();
     private final int downloadDelay;
     private final int extractDelay;
 
     public ReplayDownloader(final String url, final int downloadDelay, final int extractDelay) throws IOException {
-        pages = load(getFileName(url));
+        this(load(URLUtils.getHost(url)), downloadDelay, extractDelay);
+    }
+
+    /**
+     * Creates downloader replaying site from {@link ReplaySnapshot snapshot} file.
+     *
+     * @param snapshot snapshot file.
+     * @param downloadDelay maximal download delay.
+     * @param extractDelay maximal extraction delay.
+     * @throws IOException if snapshot cannot be read.
+     */
+    public ReplayDownloader(final Path snapshot, final int downloadDelay, final int extractDelay) throws IOException {
+        this(ReplaySnapshot.open(snapshot), downloadDelay, extractDelay);
+    }
+
+    private ReplayDownloader(final ReplaySnapshot pages, final int downloadDelay, final int extractDelay) {
+        this.pages = pages;
         this.downloadDelay = downloadDelay;
         this.extractDelay = extractDelay;
     }
 
+    /**
+     * Returns recorded pages.
+     * Replaces former {@code protected ConcurrentMap<String, Page> pages} field:
+     * snapshot supports lookup by URL and {@link ReplaySnapshot#size() size}, but not iteration.
+     *
+     * @return recorded pages.
+     */
+    protected final ReplaySnapshot getSnapshot() {
+        return pages;
+    }
+
     Page getPage(final String url) {
-        return pages.get(url);
+        return pages.getPage(url);
     }
 
     public static String getFileName(final String url) throws MalformedURLException {
         return URLUtils.getHost(url) + ".ser.gz";
     }
 
-    @SuppressWarnings("unchecked")
-    private static ConcurrentMap<String, Page> load(final String fileName) throws IOException {
-        final InputStream stream = ReplayDownloader.class.getResourceAsStream(fileName);
-        if (stream == null) {
-            throw new AssertionError("Cache file " + fileName + " not found");
+    private static ReplaySnapshot load(final String host) throws IOException {
+        final URL snapshot = ReplayDownloader.class.getResource(host + ReplaySnapshot.EXTENSION);
+        if (snapshot != null) {
+            return ReplaySnapshot.open(snapshot);
         }
-        try (final ObjectInput os = new ObjectInputStream(new GZIPInputStream(stream))) {
-            try {
-                return (ConcurrentMap<String, Page>) os.readObject();
-            } catch (final ClassNotFoundException e) {
-                throw new AssertionError(e);
-            }
+
+        final String fileName = host + ".ser.gz";
+        final URL recorded = ReplayDownloader.class.getResource(fileName);
+        if (recorded == null) {
+            throw new AssertionError("Cache file " + fileName + " not found");
         }
+        return ReplaySnapshot.convert(recorded, host);
     }
 
     @Override
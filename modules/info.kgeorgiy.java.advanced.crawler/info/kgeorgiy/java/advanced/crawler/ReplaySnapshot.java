@@ -0,0 +1,424 @@
+package info.kgeorgiy.java.advanced.crawler;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compact binary snapshot of a site recorded for {@link ReplayDownloader}.
+ * <p>
+ * Snapshot consists of a header, string offsets, page records, open-addressing URL index,
+ * link adjacency array, error offsets, UTF-8 string data and serialized errors.
+ * All integers are big-endian. Snapshot files are memory-mapped and pages are decoded
+ * lazily on first access, so only visited part of the site is materialized.
+ * Decoded pages are cached, so repeated lookups return the same errors.
+ * </p>
+ */
+public final class ReplaySnapshot {
+    /** Snapshot file extension. */
+    public static final String EXTENSION = ".snapshot";
+
+    private static final int MAGIC = 0x52504C59;
+    private static final int VERSION = 1;
+    private static final int HEADER_INTS = 9;
+    private static final int PAGE_INTS = 4;
+    private static final int NONE = -1;
+    private static final Path CACHE = Path.of(System.getProperty("java.io.tmpdir"), ReplaySnapshot.class.getName());
+
+    private final ByteBuffer buffer;
+    private final int pages;
+    private final int tableSize;
+    private final int stringOffsets;
+    private final int pageRecords;
+    private final int table;
+    private final int links;
+    private final int errorOffsets;
+    private final int stringData;
+    private final int errorData;
+    private final AtomicReferenceArray<String> strings;
+    private final AtomicReferenceArray<ReplayDownloader.Page> cache;
+
+    private ReplaySnapshot(final ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_INTS * Integer.BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a replay snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported snapshot version " + buffer.getInt(4));
+        }
+
+        final int stringCount = buffer.getInt(8);
+        this.pages = buffer.getInt(12);
+        this.tableSize = buffer.getInt(16);
+        final int linkCount = buffer.getInt(20);
+        final int errorCount = buffer.getInt(24);
+        final int stringBytes = buffer.getInt(28);
+        final int errorBytes = buffer.getInt(32);
+
+        this.stringOffsets = HEADER_INTS * Integer.BYTES;
+        this.pageRecords = stringOffsets + (stringCount + 1) * Integer.BYTES;
+        this.table = pageRecords + pages * PAGE_INTS * Integer.BYTES;
+        this.links = table + tableSize * Integer.BYTES;
+        this.errorOffsets = links + linkCount * Integer.BYTES;
+        this.stringData = errorOffsets + (errorCount + 1) * Integer.BYTES;
+        this.errorData = stringData + stringBytes;
+        if (Integer.bitCount(tableSize) != 1 || (long) errorData + errorBytes != buffer.capacity()) {
+            throw new IOException("Corrupted replay snapshot");
+        }
+
+        this.strings = new AtomicReferenceArray<>(stringCount);
+        this.cache = new AtomicReferenceArray<>(pages);
+    }
+
+    /**
+     * Memory-maps snapshot file.
+     *
+     * @param file snapshot file.
+     * @return snapshot.
+     * @throws IOException if an error occurred.
+     */
+    public static ReplaySnapshot open(final Path file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new ReplaySnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Opens snapshot resource, memory-mapping it when it is a file.
+     *
+     * @param resource snapshot resource.
+     * @return snapshot.
+     * @throws IOException if an error occurred.
+     */
+    static ReplaySnapshot open(final URL resource) throws IOException {
+        if ("file".equals(resource.getProtocol())) {
+            try {
+                return open(Path.of(resource.toURI()));
+            } catch (final URISyntaxException | IllegalArgumentException e) {
+                // Fall back to reading
+            }
+        }
+        try (final InputStream is = resource.openStream()) {
+            return new ReplaySnapshot(ByteBuffer.wrap(is.readAllBytes()));
+        }
+    }
+
+    /**
+     * Builds in-memory snapshot of the pages.
+     *
+     * @param pages recorded pages.
+     * @return snapshot.
+     * @throws IOException if an error occurred.
+     */
+    static ReplaySnapshot of(final Map<String, ReplayDownloader.Page> pages) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        write(pages, bytes);
+        return new ReplaySnapshot(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    /**
+     * Opens recorded site in the legacy {@code .ser.gz} format.
+     * Site is converted once and the snapshot is cached in the temporary directory,
+     * keyed by the checksum of the recorded site.
+     * If the cache cannot be written, snapshot is built in memory.
+     *
+     * @param recorded recorded site.
+     * @param name site name.
+     * @return snapshot.
+     * @throws IOException if an error occurred.
+     */
+    static ReplaySnapshot convert(final URL recorded, final String name) throws IOException {
+        final byte[] bytes;
+        try (final InputStream is = recorded.openStream()) {
+            bytes = is.readAllBytes();
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(bytes);
+        final Path cached = CACHE.resolve(String.format("%s-%08x%s", name, crc.getValue(), EXTENSION));
+        if (Files.isRegularFile(cached)) {
+            try {
+                return open(cached);
+            } catch (final IOException ignored) {
+                // Unreadable or corrupted snapshot is converted again
+            }
+        }
+
+        final Map<String, ReplayDownloader.Page> pages = readSerialized(new ByteArrayInputStream(bytes));
+        try {
+            Files.createDirectories(CACHE);
+            final Path temp = Files.createTempFile(CACHE, name, ".tmp");
+            try {
+                try (final OutputStream os = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                    write(pages, os);
+                }
+                // Concurrent conversions write identical snapshots
+                Files.move(temp, cached, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            return open(cached);
+        } catch (final IOException e) {
+            return of(pages);
+        }
+    }
+
+    /**
+     * Reads pages serialized in the legacy {@code .ser.gz} format.
+     *
+     * @param is serialized pages.
+     * @return recorded pages.
+     * @throws IOException if an error occurred.
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, ReplayDownloader.Page> readSerialized(final InputStream is) throws IOException {
+        try (final ObjectInput os = new ObjectInputStream(new GZIPInputStream(is))) {
+            return (Map<String, ReplayDownloader.Page>) os.readObject();
+        } catch (final ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Invalid recorded site", e);
+        }
+    }
+
+    /**
+     * Writes snapshot of the pages.
+     *
+     * @param pages recorded pages.
+     * @param os output stream.
+     * @throws IOException if an error occurred.
+     */
+    public static void write(final Map<String, ReplayDownloader.Page> pages, final OutputStream os) throws IOException {
+        final Map<String, Integer> ids = new HashMap<>();
+        final List<String> strings = new ArrayList<>();
+        final List<String> urls = new ArrayList<>(pages.keySet());
+        Collections.sort(urls);
+        urls.forEach(url -> id(url, ids, strings));
+
+        final List<Integer> links = new ArrayList<>();
+        final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        final List<Integer> errorOffsets = new ArrayList<>(List.of(0));
+        final int[] records = new int[urls.size() * PAGE_INTS];
+        for (int i = 0; i < urls.size(); i++) {
+            final ReplayDownloader.Page page = pages.get(urls.get(i));
+            records[i * PAGE_INTS] = i;
+            records[i * PAGE_INTS + 1] = page.links == null ? NONE : links.size();
+            records[i * PAGE_INTS + 2] = page.links == null ? 0 : page.links.size();
+            records[i * PAGE_INTS + 3] = page.exception == null ? NONE : errorOffsets.size() - 1;
+            if (page.links != null) {
+                for (final String link : page.links) {
+                    links.add(link == null ? NONE : id(link, ids, strings));
+                }
+            }
+            if (page.exception != null) {
+                try (final ObjectOutputStream oos = new ObjectOutputStream(errors)) {
+                    oos.writeObject(page.exception);
+                }
+                errorOffsets.add(errors.size());
+            }
+        }
+
+        final int tableSize = Integer.highestOneBit(Math.max(1, urls.size() * 2 - 1)) << 1;
+        final int[] table = new int[tableSize];
+        Arrays.fill(table, NONE);
+        for (int i = 0; i < urls.size(); i++) {
+            int slot = hash(utf8(urls.get(i))) & (tableSize - 1);
+            while (table[slot] != NONE) {
+                slot = (slot + 1) & (tableSize - 1);
+            }
+            table[slot] = i;
+        }
+
+        final ByteArrayOutputStream stringData = new ByteArrayOutputStream();
+        final int[] stringOffsets = new int[strings.size() + 1];
+        for (int i = 0; i < strings.size(); i++) {
+            stringData.writeBytes(utf8(strings.get(i)));
+            stringOffsets[i + 1] = stringData.size();
+        }
+
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+        for (final int value : new int[]{
+                MAGIC, VERSION, strings.size(), urls.size(), tableSize, links.size(),
+                errorOffsets.size() - 1, stringData.size(), errors.size()
+        }) {
+            out.writeInt(value);
+        }
+        writeInts(out, stringOffsets);
+        writeInts(out, records);
+        writeInts(out, table);
+        for (final int link : links) {
+            out.writeInt(link);
+        }
+        for (final int offset : errorOffsets) {
+            out.writeInt(offset);
+        }
+        stringData.writeTo(out);
+        errors.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Converts recorded sites from {@code .ser.gz} format to snapshots placed next to them.
+     *
+     * @param args {@code .ser.gz} files to convert.
+     */
+    public static void main(final String... args) {
+        if (args == null || args.length == 0 || Arrays.stream(args).anyMatch(Objects::isNull)) {
+            System.out.println("Usage:");
+            System.out.format("    java -cp . -p . -m info.kgeorgiy.java.advanced.crawler/%s site.ser.gz...%n",
+                    ReplaySnapshot.class.getName());
+            return;
+        }
+
+        for (final String arg : args) {
+            final Path source = Path.of(arg);
+            final Path target = source.resolveSibling(source.getFileName().toString().replaceFirst("\\.ser\\.gz$", "") + EXTENSION);
+            try {
+                final Map<String, ReplayDownloader.Page> pages;
+                try (final InputStream is = Files.newInputStream(source)) {
+                    pages = readSerialized(is);
+                }
+                try (final OutputStream os = Files.newOutputStream(target)) {
+                    write(pages, os);
+                }
+                System.out.format("%s: %d pages, %d bytes%n", target, pages.size(), Files.size(target));
+            } catch (final IOException e) {
+                System.err.println("Couldn't convert " + source + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns number of recorded pages.
+     *
+     * @return number of pages.
+     */
+    public int size() {
+        return pages;
+    }
+
+    /**
+     * Returns recorded page.
+     *
+     * @param url page URL.
+     * @return recorded page or {@code null} if there is no such page.
+     */
+    public ReplayDownloader.Page getPage(final String url) {
+        final byte[] key = utf8(url);
+        int slot = hash(key) & (tableSize - 1);
+        while (true) {
+            final int index = buffer.getInt(table + slot * Integer.BYTES);
+            if (index == NONE) {
+                return null;
+            }
+            if (matches(record(index, 0), key)) {
+                return page(index);
+            }
+            slot = (slot + 1) & (tableSize - 1);
+        }
+    }
+
+    private ReplayDownloader.Page page(final int index) {
+        final ReplayDownloader.Page cached = cache.get(index);
+        if (cached != null) {
+            return cached;
+        }
+
+        final int start = record(index, 1);
+        final List<String> pageLinks;
+        if (start == NONE) {
+            pageLinks = null;
+        } else {
+            final String[] array = new String[record(index, 2)];
+            for (int i = 0; i < array.length; i++) {
+                final int id = buffer.getInt(links + (start + i) * Integer.BYTES);
+                array[i] = id == NONE ? null : string(id);
+            }
+            pageLinks = Collections.unmodifiableList(Arrays.asList(array));
+        }
+
+        final int error = record(index, 3);
+        final ReplayDownloader.Page page = new ReplayDownloader.Page(pageLinks, error == NONE ? null : error(error));
+        return cache.compareAndSet(index, null, page) ? page : cache.get(index);
+    }
+
+    private int record(final int index, final int field) {
+        return buffer.getInt(pageRecords + (index * PAGE_INTS + field) * Integer.BYTES);
+    }
+
+    private String string(final int id) {
+        final String cached = strings.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        final String string = new String(bytes(stringData, stringOffsets, id), StandardCharsets.UTF_8);
+        strings.lazySet(id, string);
+        return string;
+    }
+
+    private IOException error(final int id) {
+        try (final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes(errorData, errorOffsets, id)))) {
+            return (IOException) ois.readObject();
+        } catch (final IOException | ClassNotFoundException | ClassCastException e) {
+            return new IOException("Couldn't decode recorded error", e);
+        }
+    }
+
+    private byte[] bytes(final int data, final int offsets, final int id) {
+        final int from = buffer.getInt(offsets + id * Integer.BYTES);
+        final int to = buffer.getInt(offsets + (id + 1) * Integer.BYTES);
+        final byte[] result = new byte[to - from];
+        final ByteBuffer view = buffer.duplicate();
+        view.position(data + from);
+        view.get(result);
+        return result;
+    }
+
+    private boolean matches(final int id, final byte[] key) {
+        final int from = stringData + buffer.getInt(stringOffsets + id * Integer.BYTES);
+        final int to = stringData + buffer.getInt(stringOffsets + (id + 1) * Integer.BYTES);
+        if (to - from != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(from + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int id(final String string, final Map<String, Integer> ids, final List<String> strings) {
+        return ids.computeIfAbsent(string, s -> {
+            strings.add(s);
+            return strings.size() - 1;
+        });
+    }
+
+    private static void writeInts(final DataOutputStream out, final int[] values) throws IOException {
+        for (final int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static byte[] utf8(final String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // FNV-1a
+    private static int hash(final byte[] bytes) {
+        int hash = 0x811c9dc5;
+        for (final byte b : bytes) {
+            hash = (hash ^ (b & 0xff)) * 0x01000193;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,503 @@
+package info.kgeorgiy.java.advanced.crawler;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only key-value storage. Records are appended to segment files and located
+ * via in-memory index, that is rebuilt from record headers on open.
+ * Superseded records are dropped by {@link #compact() compaction}.
+ * Segments are forced to disk when they are full and when compaction completes.
+ * <p>
+ * Record layout: key length, value length, CRC32 of key and value, key (UTF-8), value.
+ * Checksums are verified on open: each segment is truncated at its first truncated or damaged record.
+ * <p>
+ * Records are published in the index only after they are completely written,
+ * so readers never observe partial records. Single storage instance is shared by
+ * all users of the same directory in this JVM and the directory is locked
+ * against other processes.
+ */
+final class SegmentStore implements Closeable {
+    private static final Pattern SEGMENT = Pattern.compile("segment-(\\d+)\\.dat");
+    private static final int HEADER_SIZE = 3 * Integer.BYTES;
+    private static final long SEGMENT_SIZE = 64L << 20;
+    private static final long COMPACTION_THRESHOLD = 16L << 20;
+    private static final String LOCK_FILE = "segments.lock";
+    private static final Map<Path, SegmentStore> OPENED = new HashMap<>();
+
+    private final Path directory;
+    private final FileChannel lockChannel;
+    private final FileLock lockFile;
+    private final ConcurrentMap<String, Location> index = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, FileChannel> segments = new ConcurrentHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ConcurrentMap<String, CompletableFuture<ByteBuffer>> loading = new ConcurrentHashMap<>();
+
+    // Guarded by OPENED
+    private int references;
+
+    // Guarded by this
+    private int active;
+    private long activeSize;
+    private long totalSize;
+    private long liveSize;
+
+    /**
+     * Opens storage in the specified directory or returns already opened one.
+     * Each call should be paired with {@link #close()}.
+     *
+     * @param directory storage directory.
+     *
+     * @return opened storage.
+     *
+     * @throws IOException if an error occurred.
+     */
+    static SegmentStore open(final Path directory) throws IOException {
+        final Path real = directory.toRealPath();
+        synchronized (OPENED) {
+            SegmentStore store = OPENED.get(real);
+            if (store == null) {
+                store = new SegmentStore(real);
+                OPENED.put(real, store);
+            }
+            store.references++;
+            return store;
+        }
+    }
+
+    private SegmentStore(final Path directory) throws IOException {
+        this.directory = directory;
+        this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.lockFile = lockChannel.tryLock();
+        if (lockFile == null) {
+            lockChannel.close();
+            throw new IOException("Storage " + directory + " is used by another process");
+        }
+
+        final SortedMap<Integer, Path> files = new TreeMap<>();
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (final Path file : stream) {
+                final Matcher matcher = SEGMENT.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    files.put(Integer.parseInt(matcher.group(1)), file);
+                }
+            }
+        }
+
+        try {
+            for (final Map.Entry<Integer, Path> entry : files.entrySet()) {
+                final int id = entry.getKey();
+                final FileChannel channel = FileChannel.open(entry.getValue(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                segments.put(id, channel);
+                activeSize = scan(id, channel);
+                active = id;
+            }
+            if (segments.isEmpty()) {
+                roll();
+            }
+        } catch (final IOException e) {
+            release();
+            throw e;
+        }
+    }
+
+    private long scan(final int id, final FileChannel channel) throws IOException {
+        final long size = channel.size();
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long position = 0;
+        while (position + HEADER_SIZE <= size) {
+            readFully(channel, header.clear(), position);
+            final int keyLength = header.getInt(0);
+            final int valueLength = header.getInt(Integer.BYTES);
+            final Location location = new Location(id, position, keyLength, valueLength);
+            if (keyLength < 0 || valueLength < 0 || position + location.size() > size) {
+                break;
+            }
+
+            final ByteBuffer record = read(location);
+            if (!isValid(record)) {
+                break;
+            }
+            index(new String(record.array(), HEADER_SIZE, keyLength, StandardCharsets.UTF_8), location);
+            position += location.size();
+        }
+        if (position < size) {
+            channel.truncate(position);
+        }
+        return position;
+    }
+
+    private static boolean isValid(final ByteBuffer record) {
+        final byte[] bytes = record.array();
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE);
+        return (int) crc.getValue() == record.getInt(2 * Integer.BYTES);
+    }
+
+    /**
+     * Returns value stored for the specified key.
+     *
+     * @param key key to lookup.
+     *
+     * @return stored value or {@code null} if there is no valid record for the key.
+     *
+     * @throws IOException if an error occurred.
+     */
+    ByteBuffer get(final String key) throws IOException {
+        lock.readLock().lock();
+        try {
+            final Location location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+
+            final ByteBuffer record = read(location);
+            if (!isValid(record)) {
+                return null;
+            }
+            return ByteBuffer.wrap(record.array(), HEADER_SIZE + location.keyLength, location.valueLength).slice();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns fresh value stored for the specified key, loading and storing it if absent or stale.
+     * Concurrent loads of the same key are coalesced: only one loader is invoked,
+     * while other callers await its result.
+     *
+     * @param key key to lookup.
+     * @param fresh tests whether stored value is fresh.
+     * @param loader value loader.
+     *
+     * @return stored or loaded value.
+     *
+     * @throws IOException if an error occurred.
+     */
+    ByteBuffer get(final String key, final Predicate<ByteBuffer> fresh, final Loader loader) throws IOException {
+        final ByteBuffer stored = get(key);
+        if (stored != null && fresh.test(stored)) {
+            return stored;
+        }
+
+        final CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        final CompletableFuture<ByteBuffer> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            return await(existing);
+        }
+
+        try {
+            // Previous load may have completed after the lookup
+            ByteBuffer value = get(key);
+            if (value == null || !fresh.test(value)) {
+                value = loader.load(value);
+                put(key, value);
+            }
+            future.complete(value);
+            return value;
+        } catch (final IOException | RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    private static ByteBuffer await(final CompletableFuture<ByteBuffer> future) throws IOException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while awaiting value");
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new AssertionError(cause);
+        }
+    }
+
+    /**
+     * Stores value for the specified key, superseding previously stored one.
+     *
+     * @param key key to store value for.
+     * @param value value to store, its position is left unchanged.
+     *
+     * @throws IOException if an error occurred.
+     */
+    void put(final String key, final ByteBuffer value) throws IOException {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final CRC32 crc = new CRC32();
+        crc.update(keyBytes);
+        crc.update(value.duplicate());
+        final ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length + value.remaining())
+                .putInt(keyBytes.length)
+                .putInt(value.remaining())
+                .putInt((int) crc.getValue())
+                .put(keyBytes)
+                .put(value.duplicate())
+                .flip();
+
+        final boolean compact;
+        lock.readLock().lock();
+        try {
+            synchronized (this) {
+                append(key, record, keyBytes.length, value.remaining());
+                compact = needsCompaction();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (compact) {
+            compact(false);
+        }
+    }
+
+    /**
+     * Rewrites live records to new segments and removes old segments.
+     *
+     * @throws IOException if an error occurred.
+     */
+    void compact() throws IOException {
+        compact(true);
+    }
+
+    private void compact(final boolean force) throws IOException {
+        lock.writeLock().lock();
+        try {
+            synchronized (this) {
+                if (force || needsCompaction()) {
+                    rewrite();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean needsCompaction() {
+        return totalSize > COMPACTION_THRESHOLD && liveSize < totalSize / 2;
+    }
+
+    /**
+     * Copies live records to new segments. Index is switched to the new segments and old ones are deleted
+     * only after all records are copied and forced to disk, so a failed compaction loses nothing.
+     * Should the process stop in between, both copies are found on open and the newer one wins.
+     */
+    private void rewrite() throws IOException {
+        final Map<Integer, FileChannel> old = Map.copyOf(segments);
+        final List<Map.Entry<String, Location>> live = new ArrayList<>(index.entrySet());
+        live.sort(Map.Entry.comparingByValue());
+
+        final int oldActive = active;
+        final long oldActiveSize = activeSize;
+        final Map<String, Location> rewritten = new HashMap<>();
+        try {
+            roll();
+            for (final Map.Entry<String, Location> entry : live) {
+                final Location location = entry.getValue();
+                rewritten.put(entry.getKey(), write(read(location), location.keyLength, location.valueLength));
+            }
+            segments.get(active).force(true);
+        } catch (final IOException e) {
+            for (final Integer id : new ArrayList<>(segments.keySet())) {
+                if (!old.containsKey(id)) {
+                    try (final FileChannel channel = segments.remove(id)) {
+                        Files.deleteIfExists(segmentFile(id));
+                    } catch (final IOException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                }
+            }
+            active = oldActive;
+            activeSize = oldActiveSize;
+            throw e;
+        }
+
+        index.clear();
+        totalSize = 0;
+        liveSize = 0;
+        rewritten.forEach(this::index);
+        for (final Map.Entry<Integer, FileChannel> entry : old.entrySet()) {
+            segments.remove(entry.getKey());
+            entry.getValue().close();
+            Files.delete(segmentFile(entry.getKey()));
+        }
+    }
+
+    private void append(final String key, final ByteBuffer record, final int keyLength, final int valueLength) throws IOException {
+        index(key, write(record, keyLength, valueLength));
+    }
+
+    private Location write(final ByteBuffer record, final int keyLength, final int valueLength) throws IOException {
+        final int size = record.remaining();
+        if (activeSize > 0 && activeSize + size > SEGMENT_SIZE) {
+            roll();
+        }
+        final long position = activeSize;
+        writeFully(segments.get(active), record, position);
+        activeSize += size;
+        return new Location(active, position, keyLength, valueLength);
+    }
+
+    private void index(final String key, final Location location) {
+        final Location previous = index.put(key, location);
+        totalSize += location.size();
+        liveSize += location.size() - (previous == null ? 0 : previous.size());
+    }
+
+    private void roll() throws IOException {
+        // Full segments are never written again, so they are forced to disk once
+        final FileChannel full = segments.get(active);
+        if (full != null) {
+            full.force(true);
+        }
+
+        final int id = segments.isEmpty() ? 0 : Collections.max(segments.keySet()) + 1;
+        final FileChannel channel = FileChannel.open(
+                segmentFile(id),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE
+        );
+        segments.put(id, channel);
+        active = id;
+        activeSize = 0;
+    }
+
+    private Path segmentFile(final int id) {
+        return directory.resolve(String.format("segment-%08d.dat", id));
+    }
+
+    private ByteBuffer read(final Location location) throws IOException {
+        final FileChannel channel = segments.get(location.segment);
+        if (channel == null) {
+            throw new IOException("Storage is closed");
+        }
+        final ByteBuffer record = ByteBuffer.allocate(Math.toIntExact(location.size()));
+        readFully(channel, record, location.position);
+        return record.flip();
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of segment");
+            }
+        }
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        for (long offset = position; buffer.hasRemaining(); ) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+
+    /**
+     * Releases this storage. Segment files are closed when the storage is released by all its users.
+     *
+     * @throws IOException if an error occurred.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (OPENED) {
+            if (--references > 0) {
+                return;
+            }
+            OPENED.remove(directory);
+        }
+        release();
+    }
+
+    private void release() throws IOException {
+        lock.writeLock().lock();
+        try {
+            IOException exception = null;
+            final List<Closeable> closeables = new ArrayList<>(segments.values());
+            closeables.add(lockFile::release);
+            closeables.add(lockChannel);
+            for (final Closeable closeable : closeables) {
+                try {
+                    closeable.close();
+                } catch (final IOException e) {
+                    if (exception == null) {
+                        exception = e;
+                    } else {
+                        exception.addSuppressed(e);
+                    }
+                }
+            }
+            segments.clear();
+            if (exception != null) {
+                throw exception;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Loads value for absent or stale key.
+     */
+    @FunctionalInterface
+    interface Loader {
+        /**
+         * Loads value.
+         *
+         * @param stale stale value or {@code null} if there is no stored value.
+         *
+         * @return loaded value, backed by array.
+         *
+         * @throws IOException if an error occurred.
+         */
+        ByteBuffer load(ByteBuffer stale) throws IOException;
+    }
+
+    private static final class Location implements Comparable<Location> {
+        private final int segment;
+        private final long position;
+        private final int keyLength;
+        private final int valueLength;
+
+        private Location(final int segment, final long position, final int keyLength, final int valueLength) {
+            this.segment = segment;
+            this.position = position;
+            this.keyLength = keyLength;
+            this.valueLength = valueLength;
+        }
+
+        private long size() {
+            return (long) HEADER_SIZE + keyLength + valueLength;
+        }
+
+        @Override
+        public int compareTo(final Location that) {
+            final int bySegment = Integer.compare(segment, that.segment);
+            return bySegment != 0 ? bySegment : Long.compare(position, that.position);
+        }
+    }
+}
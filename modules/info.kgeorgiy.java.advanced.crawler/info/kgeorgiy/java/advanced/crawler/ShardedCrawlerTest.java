@@ -0,0 +1,149 @@
+package info.kgeorgiy.java.advanced.crawler;
+
+import com.sun.net.httpserver.HttpServer;
+import info.kgeorgiy.java.advanced.base.BaseTest;
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Tests crawlers that split pages between shards running in separate processes.
+ * Tested class should have {@code (int shards, int downloaders, int extractors, int perHost, String... downloader)}
+ * constructor, where downloader is specified as {@code http}, {@code cached [directory]}
+ * or {@code replay url downloadDelay extractDelay}.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ShardedCrawlerTest extends BaseTest {
+    private static final String[] HOSTS = {"localhost", "127.0.0.1"};
+    private static final int PAGES = 20;
+
+    @Test
+    public void test01_singleShard() throws IOException {
+        test("https://itmo.ru", 2, 1);
+    }
+
+    @Test
+    public void test02_multipleShards() throws IOException {
+        test("https://itmo.ru", 2, 3);
+    }
+
+    @Test
+    public void test03_deep() throws IOException {
+        for (int depth = 1; depth <= 4; depth++) {
+            test("http://www.kgeorgiy.info", depth, 2);
+        }
+    }
+
+    @Test
+    public void test04_sharedStorage() throws IOException {
+        final Path directory = Files.createTempDirectory(ShardedCrawlerTest.class.getName());
+        final AtomicInteger requests = new AtomicInteger();
+        final HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            try {
+                final String[] path = exchange.getRequestURI().getPath().split("/");
+                final int page = path.length == 3 && "page".equals(path[1]) ? Integer.parseInt(path[2]) : 0;
+                if (page < 1 || page > PAGES) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+                final byte[] body = page(server, page).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (final OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            final String url = url(server, 1);
+            final Result first = cached(directory, url);
+            Assert.assertEquals("Pages", PAGES, first.getDownloaded().size());
+            Assert.assertEquals("Errors", PAGES / 2, first.getErrors().size());
+            Assert.assertEquals("Requests", PAGES + PAGES / 2, requests.get());
+            for (int shard = 0; shard < 3; shard++) {
+                Assert.assertTrue("Missing storage of shard " + shard, Files.isDirectory(directory.resolve("shard-" + shard)));
+            }
+
+            requests.set(0);
+            final Result second = cached(directory, url);
+            Assert.assertEquals("Downloads of stored pages", 0, requests.get());
+            EasyCrawlerTest.checkResult(
+                    new Result(first.getDownloaded(), Map.of()),
+                    new Result(second.getDownloaded(), Map.of())
+            );
+            Assert.assertEquals("Errors", messages(first), messages(second));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static Result cached(final Path directory, final String url) {
+        try (final Crawler crawler = createInstance(3, 10, "cached", directory.toString())) {
+            return crawler.download(url, PAGES + 1);
+        }
+    }
+
+    // Pages form a chain over two host names, each linking to a missing page of the other host
+    private static String page(final HttpServer server, final int page) {
+        final StringBuilder sb = new StringBuilder("<html><body>");
+        if (page < PAGES) {
+            sb.append("<a href=\"").append(url(server, page + 1)).append("\">Next</a>");
+        }
+        if (page % 2 == 0) {
+            sb.append("<a href=\"").append(url(server, page + 1).replace("/page/", "/missing/")).append("\">Missing</a>");
+        }
+        return sb.append("</body></html>").toString();
+    }
+
+    private static String url(final HttpServer server, final int page) {
+        return "http://" + HOSTS[page % HOSTS.length] + ":" + server.getAddress().getPort() + "/page/" + page;
+    }
+
+    private static void test(final String url, final int depth, final int shards) throws IOException {
+        final ReplayDownloader replayDownloader = new ReplayDownloader(url, 10, 10);
+        final Result actual;
+        try (final Crawler crawler = createInstance(shards, 10, "replay", url, "10", "10")) {
+            actual = crawler.download(url, depth);
+        }
+
+        final Result expected = replayDownloader.expected(url, depth);
+        // Errors are passed between processes, so they are compared by messages
+        EasyCrawlerTest.checkResult(
+                new Result(expected.getDownloaded(), Map.of()),
+                new Result(actual.getDownloaded(), Map.of())
+        );
+        Assert.assertEquals("Errors", messages(expected), messages(actual));
+    }
+
+    private static Map<String, String> messages(final Result result) {
+        return result.getErrors().entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> String.valueOf(e.getValue().getMessage())));
+    }
+
+    private static Crawler createInstance(final int shards, final int threads, final String... downloader) {
+        try {
+            return (Crawler) loadClass()
+                    .getConstructor(int.class, int.class, int.class, int.class, String[].class)
+                    .newInstance(shards, threads, threads, threads, downloader);
+        } catch (final Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package info.kgeorgiy.java.advanced.crawler;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deterministic synthetic site for crawler load testing.
+ * <p>
+ * Pages {@code 0 .. pages - 1} are spread over {@code hosts} hosts round-robin.
+ * Links of every page are generated on demand from a seed derived from the page number,
+ * so the link graph is never materialized. Out-degrees are geometric with the given mean.
+ * Link targets follow Zipf law with the given exponent over a fixed pseudo-random
+ * permutation of pages, so a few pages are very popular. A {@code locality} fraction of
+ * links stays on the same host. Pages fail with probability {@code errorRate};
+ * failures are permanent for the page.
+ * </p>
+ * Download and extraction latencies are sampled from the given {@link Latency} distributions.
+ */
+public final class SyntheticDownloader implements Downloader {
+    private static final String PATH = "/page/";
+    private static final int LINKS = 1;
+    private static final int ERRORS = 2;
+    private static final int LATENCY = 3;
+
+    private final long seed;
+    private final int hosts;
+    private final int pages;
+    private final double degree;
+    private final double exponent;
+    private final double locality;
+    private final double errorRate;
+    private final Latency downloadLatency;
+    private final Latency extractLatency;
+    private final AtomicLong downloads = new AtomicLong();
+
+    /**
+     * Creates synthetic site with 20 links per page on average, Zipf exponent 0.9
+     * (in-degree power law with exponent about 2.1, as observed on the web),
+     * 80% of links on the same host, no errors and no latency.
+     *
+     * @param seed site seed.
+     * @param hosts number of hosts.
+     * @param pages number of pages.
+     */
+    public SyntheticDownloader(final long seed, final int hosts, final int pages) {
+        this(seed, hosts, pages, 20, 0.9, 0.8, 0, Latency.none(), Latency.none());
+    }
+
+    private SyntheticDownloader(
+            final long seed,
+            final int hosts,
+            final int pages,
+            final double degree,
+            final double exponent,
+            final double locality,
+            final double errorRate,
+            final Latency downloadLatency,
+            final Latency extractLatency
+    ) {
+        if (hosts <= 0 || pages < hosts) {
+            throw new IllegalArgumentException("There should be at least one page per host");
+        }
+        if (degree < 0 || exponent <= 0 || locality < 0 || locality > 1 || errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("Invalid site parameters");
+        }
+        this.seed = seed;
+        this.hosts = hosts;
+        this.pages = pages;
+        this.degree = degree;
+        this.exponent = exponent;
+        this.locality = locality;
+        this.errorRate = errorRate;
+        this.downloadLatency = Objects.requireNonNull(downloadLatency);
+        this.extractLatency = Objects.requireNonNull(extractLatency);
+    }
+
+    /**
+     * Returns site with the given link distribution.
+     *
+     * @param degree mean number of links per page.
+     * @param exponent Zipf exponent of link targets.
+     * @param locality fraction of links to the same host.
+     * @return synthetic site.
+     */
+    public SyntheticDownloader withLinks(final double degree, final double exponent, final double locality) {
+        return new SyntheticDownloader(seed, hosts, pages, degree, exponent, locality, errorRate, downloadLatency, extractLatency);
+    }
+
+    /**
+     * Returns site with the given fraction of failing pages.
+     *
+     * @param errorRate fraction of failing pages.
+     * @return synthetic site.
+     */
+    public SyntheticDownloader withErrors(final double errorRate) {
+        return new SyntheticDownloader(seed, hosts, pages, degree, exponent, locality, errorRate, downloadLatency, extractLatency);
+    }
+
+    /**
+     * Returns site with the given latencies.
+     *
+     * @param download download latency.
+     * @param extract extraction latency.
+     * @return synthetic site.
+     */
+    public SyntheticDownloader withLatency(final Latency download, final Latency extract) {
+        return new SyntheticDownloader(seed, hosts, pages, degree, exponent, locality, errorRate, download, extract);
+    }
+
+    /**
+     * Returns URL of the page.
+     *
+     * @param page page number.
+     * @return page URL.
+     */
+    public String getUrl(final int page) {
+        return "http://h" + page % hosts + ".synthetic.test" + PATH + page;
+    }
+
+    /**
+     * Returns URL of the most popular page, which is a natural crawl root.
+     *
+     * @return root URL.
+     */
+    public String getRoot() {
+        return getUrl(permute(0, pages, 0));
+    }
+
+    /**
+     * Returns number of downloads performed.
+     *
+     * @return number of downloads.
+     */
+    public long getDownloads() {
+        return downloads.get();
+    }
+
+    @Override
+    public Document download(final String url) throws IOException {
+        final int page = parse(url);
+        downloads.incrementAndGet();
+        final SplittableRandom latency = random(page, LATENCY);
+        sleep(downloadLatency.millis(latency));
+        if (fails(page)) {
+            throw new IOException("Synthetic error for " + url);
+        }
+        final long extractDelay = extractLatency.millis(latency);
+        return () -> {
+            sleep(extractDelay);
+            return links(page);
+        };
+    }
+
+    /**
+     * Returns links of the page without any delays.
+     *
+     * @param page page number.
+     * @return page links.
+     */
+    public List<String> links(final int page) {
+        final SplittableRandom random = random(page, LINKS);
+        final int count = (int) Math.min(Integer.MAX_VALUE / 2, Math.floor(-degree * Math.log(1 - random.nextDouble())));
+        final List<String> links = new ArrayList<>(count);
+        final int host = page % hosts;
+        final int hostPages = (pages - host + hosts - 1) / hosts;
+        for (int i = 0; i < count; i++) {
+            if (random.nextDouble() < locality) {
+                links.add(getUrl(permute(zipf(hostPages, random), hostPages, host + 1) * hosts + host));
+            } else {
+                links.add(getUrl(permute(zipf(pages, random), pages, 0)));
+            }
+        }
+        return links;
+    }
+
+    /**
+     * Returns expected crawl result, computed by breadth-first traversal of the generated graph.
+     * Errors should be compared by URLs only.
+     *
+     * @param url start URL.
+     * @param depth crawl depth.
+     * @return expected result.
+     */
+    public Result expected(final String url, final int depth) {
+        final List<String> downloaded = new ArrayList<>();
+        final Map<String, IOException> errors = new HashMap<>();
+        final Set<String> visited = new HashSet<>(Set.of(url));
+        List<String> level = List.of(url);
+        for (int i = 1; i <= depth; i++) {
+            final List<String> next = new ArrayList<>();
+            for (final String page : level) {
+                final int id;
+                try {
+                    id = parse(page);
+                } catch (final IOException e) {
+                    errors.put(page, e);
+                    continue;
+                }
+                if (fails(id)) {
+                    errors.put(page, new IOException("Synthetic error for " + page));
+                    continue;
+                }
+                downloaded.add(page);
+                if (i < depth) {
+                    links(id).stream().filter(visited::add).forEach(next::add);
+                }
+            }
+            level = next;
+        }
+        return new Result(downloaded, errors);
+    }
+
+    private int parse(final String url) throws IOException {
+        final int index = url.indexOf(PATH);
+        try {
+            final int page = Integer.parseInt(url.substring(index + PATH.length()));
+            if (index >= 0 && page >= 0 && page < pages && url.equals(getUrl(page))) {
+                return page;
+            }
+        } catch (final NumberFormatException | IndexOutOfBoundsException ignored) {
+        }
+        throw new MalformedURLException("Unknown page " + url);
+    }
+
+    private boolean fails(final int page) {
+        return random(page, ERRORS).nextDouble() < errorRate;
+    }
+
+    // Independent streams, so latencies do not affect the graph
+    private SplittableRandom random(final int page, final int stream) {
+        return new SplittableRandom(mix(seed ^ mix((long) page * 4 + stream)));
+    }
+
+    // Continuous approximation of Zipf law over ranks 0 .. n - 1
+    private int zipf(final int n, final SplittableRandom random) {
+        final double u = random.nextDouble();
+        final double x = exponent == 1
+                ? Math.pow(n + 1, u)
+                : Math.pow((Math.pow(n + 1, 1 - exponent) - 1) * u + 1, 1 / (1 - exponent));
+        return Math.min(n - 1, Math.max(0, (int) x - 1));
+    }
+
+    // Bijection of 0 .. n - 1 specific to the seed and the salt
+    private int permute(final int rank, final int n, final int salt) {
+        final long hash = mix(seed + salt);
+        long multiplier = (hash >>> 33) % n | 1;
+        while (gcd(multiplier, n) != 1) {
+            multiplier += 2;
+        }
+        return (int) ((rank * multiplier + (hash & Integer.MAX_VALUE)) % n);
+    }
+
+    private static long gcd(final long a, final long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(final long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static void sleep(final long millis) {
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Latency distribution.
+     */
+    @FunctionalInterface
+    public interface Latency {
+        /**
+         * Samples latency.
+         *
+         * @param random source of randomness.
+         * @return latency in milliseconds.
+         */
+        long millis(SplittableRandom random);
+
+        /**
+         * Returns zero latency.
+         *
+         * @return latency distribution.
+         */
+        static Latency none() {
+            return random -> 0;
+        }
+
+        /**
+         * Returns latency uniformly distributed in the range.
+         *
+         * @param min minimal latency in milliseconds.
+         * @param max maximal latency in milliseconds.
+         * @return latency distribution.
+         */
+        static Latency uniform(final long min, final long max) {
+            return random -> min + (long) (random.nextDouble() * (max - min + 1));
+        }
+
+        /**
+         * Returns log-normal latency, typical for network requests.
+         *
+         * @param median median latency in milliseconds.
+         * @param sigma standard deviation of latency logarithm.
+         * @param max maximal latency in milliseconds.
+         * @return latency distribution.
+         */
+        static Latency logNormal(final double median, final double sigma, final long max) {
+            return random -> {
+                // Box-Muller transform
+                final double gaussian = Math.sqrt(-2 * Math.log(1 - random.nextDouble()))
+                        * Math.cos(2 * Math.PI * random.nextDouble());
+                return Math.min(max, Math.round(median * Math.exp(sigma * gaussian)));
+            };
+        }
+    }
+}
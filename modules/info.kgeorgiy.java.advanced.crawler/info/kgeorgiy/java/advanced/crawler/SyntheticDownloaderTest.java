@@ -0,0 +1,145 @@
+package info.kgeorgiy.java.advanced.crawler;
+
+import info.kgeorgiy.java.advanced.base.BaseTest;
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests {@link SyntheticDownloader synthetic sites}.
+ * Tested class is used only by {@link #test05_crawl()}.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SyntheticDownloaderTest extends BaseTest {
+    private static final long SEED = 7_184_382_117L;
+    private static final int HOSTS = 7;
+    private static final int PAGES = 10_000;
+    private static final double DEGREE = 20;
+    private static final double LOCALITY = 0.8;
+
+    @Test
+    public void test01_deterministic() throws IOException {
+        final SyntheticDownloader first = new SyntheticDownloader(SEED, HOSTS, PAGES).withErrors(0.1);
+        final SyntheticDownloader second = new SyntheticDownloader(SEED, HOSTS, PAGES).withErrors(0.1);
+        final SyntheticDownloader other = new SyntheticDownloader(SEED + 1, HOSTS, PAGES).withErrors(0.1);
+        Assert.assertEquals("Root", first.getRoot(), second.getRoot());
+
+        int differences = 0;
+        for (int page = 0; page < PAGES; page += 7) {
+            final String url = first.getUrl(page);
+            Assert.assertEquals("URL of page " + page, url, second.getUrl(page));
+            Assert.assertEquals("Links of " + url, first.links(page), second.links(page));
+            Assert.assertEquals("Links of " + url, first.links(page), first.links(page));
+            Assert.assertEquals("Failure of " + url, fails(first, url), fails(second, url));
+            if (!first.links(page).equals(other.links(page))) {
+                differences++;
+            }
+        }
+        Assert.assertTrue("Different seeds should give different sites", differences > PAGES / 7 / 2);
+        final Result expected = first.expected(first.getRoot(), 3);
+        Assert.assertEquals("Expected pages", expected.getDownloaded(), second.expected(second.getRoot(), 3).getDownloaded());
+        Assert.assertEquals("Expected errors", expected.getErrors().keySet(), second.expected(second.getRoot(), 3).getErrors().keySet());
+    }
+
+    @Test
+    public void test02_links() throws IOException {
+        final SyntheticDownloader site = new SyntheticDownloader(SEED, HOSTS, PAGES);
+        long links = 0;
+        long local = 0;
+        final Map<String, Integer> inDegree = new HashMap<>();
+        for (int page = 0; page < PAGES; page++) {
+            final String host = URLUtils.getHost(site.getUrl(page));
+            for (final String link : site.links(page)) {
+                Assert.assertEquals("Link out of graph: " + link, link, site.getUrl(page(link)));
+                if (host.equals(URLUtils.getHost(link))) {
+                    local++;
+                }
+                inDegree.merge(link, 1, Integer::sum);
+                links++;
+            }
+        }
+
+        Assert.assertEquals("Mean degree", DEGREE, (double) links / PAGES, DEGREE * 0.05);
+        // Remote links land on the same host in 1 / HOSTS cases
+        final double expectedLocal = LOCALITY + (1 - LOCALITY) / HOSTS;
+        Assert.assertEquals("Local links", expectedLocal, (double) local / links, 0.02);
+        final int root = inDegree.getOrDefault(site.getRoot(), 0);
+        Assert.assertTrue("Root should be popular: " + root + " links", root > DEGREE * 10);
+    }
+
+    @Test
+    public void test03_errors() throws IOException {
+        for (final double rate : new double[]{0, 0.05, 0.3, 1}) {
+            final SyntheticDownloader site = new SyntheticDownloader(SEED, HOSTS, PAGES).withErrors(rate);
+            int errors = 0;
+            for (int page = 0; page < PAGES; page++) {
+                final String url = site.getUrl(page);
+                final boolean failed = fails(site, url);
+                Assert.assertEquals("Failures should be permanent for " + url, failed, fails(site, url));
+                if (failed) {
+                    errors++;
+                }
+            }
+            Assert.assertEquals("Error rate", rate, (double) errors / PAGES, 0.01);
+            Assert.assertEquals("Downloads", 2L * PAGES, site.getDownloads());
+        }
+    }
+
+    @Test
+    public void test04_unknown() {
+        final SyntheticDownloader site = new SyntheticDownloader(SEED, HOSTS, PAGES);
+        for (final String url : List.of(
+                site.getUrl(0) + "0",
+                site.getUrl(1).replace("h1.", "h2."),
+                "http://h0.synthetic.test/page/" + PAGES,
+                "http://h0.synthetic.test/page/-7",
+                "http://h0.synthetic.test/other/0"
+        )) {
+            try {
+                site.download(url);
+                Assert.fail("Unknown page downloaded: " + url);
+            } catch (final MalformedURLException ignored) {
+                // Expected
+            } catch (final IOException e) {
+                throw new AssertionError("Unexpected error for " + url, e);
+            }
+        }
+    }
+
+    @Test
+    public void test05_crawl() {
+        final SyntheticDownloader site = new SyntheticDownloader(SEED, HOSTS, PAGES).withErrors(0.1);
+        final String root = site.getRoot();
+        final Result expected = site.expected(root, 3);
+        final Result actual;
+        try (final Crawler crawler = EasyCrawlerTest.createInstance(site, 10, 10, 10, Crawler.class)) {
+            actual = crawler.download(root, 3);
+        }
+        Assert.assertEquals("Downloaded", new HashSet<>(expected.getDownloaded()), new HashSet<>(actual.getDownloaded()));
+        Assert.assertEquals("Errors", expected.getErrors().keySet(), actual.getErrors().keySet());
+        Assert.assertEquals("Downloads", expected.getDownloaded().size() + expected.getErrors().size(), site.getDownloads());
+    }
+
+    private static int page(final String url) {
+        return Integer.parseInt(url.substring(url.lastIndexOf('/') + 1));
+    }
+
+    private static boolean fails(final SyntheticDownloader site, final String url) throws IOException {
+        try {
+            site.download(url);
+            return false;
+        } catch (final MalformedURLException e) {
+            throw e;
+        } catch (final IOException e) {
+            return true;
+        }
+    }
+}
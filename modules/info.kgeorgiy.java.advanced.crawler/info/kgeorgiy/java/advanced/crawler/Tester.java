@@ -11,6 +11,15 @@ public class Tester extends BaseTester {
                 .add("easy", EasyCrawlerTest.class)
                 .add("hard", HardCrawlerTest.class)
                 .add("advanced", AdvancedCrawlerTest.class)
+                .add("http", HttpCrawlerTest.class)
+                .add("sharded", ShardedCrawlerTest.class)
+                .add("checkpoint", CheckpointCrawlerTest.class)
+                .add("links", LinkScannerTest.class)
+                .add("urls", URLUtilsTest.class)
+                .add("budget", BudgetCrawlerTest.class)
+                .add("metrics", MetricsCrawlerTest.class)
+                .add("adaptive", AdaptiveCrawlerTest.class)
+                .add("synthetic", SyntheticDownloaderTest.class)
                 .run(args);
     }
 
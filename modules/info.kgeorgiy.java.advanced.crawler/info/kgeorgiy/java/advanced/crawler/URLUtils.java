@@ -2,7 +2,6 @@ package info.kgeorgiy.java.advanced.crawler;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -12,12 +11,28 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
 
 /**
  * Utility class for <a href="http://tools.ietf.org/html/rfc3986">URL</a> manipulations.
  * @author Georgiy Korneev (kgeorgiy@kgeorgiy.info)
  */
 public final class URLUtils {
+    /**
+     * Name of the system property, that enables streaming link extraction.
+     */
+    public static final String STREAMING_PROPERTY = "info.kgeorgiy.java.advanced.crawler.streaming";
+
+    private static final boolean STREAMING = Boolean.getBoolean(STREAMING_PROPERTY);
+
+    private static final int URI_CACHE_SIZE = 1 << 12;
+    // Direct-mapped cache shared by all threads without synchronization.
+    // Entries have only final fields, so a racing reader sees either null or a fully constructed entry
+    // (JLS 17.5), and the entry is checked against the requested URL before use.
+    // A lost or overwritten entry only costs another conversion.
+    private static final CachedURI[] URI_CACHE = new CachedURI[URI_CACHE_SIZE];
+
     // Utility class
     private URLUtils() {}
 
@@ -26,7 +41,7 @@ public final class URLUtils {
      *
      * @param url url to get host part for.
      *
-     * @return host part of the provided URL or empty string if URL has no host part.
+     * @return lower-case host part of the provided URL or empty string if URL has no host part.
      *
      * @throws MalformedURLException if specified URL is invalid.
      */
@@ -35,8 +50,18 @@ public final class URLUtils {
     }
 
     /**
-     * Converts string representation of the URL to {@link URI}. Converted URI always
-     * have non-empty path. If original URL has empty path, the "{@code /}" path is used.
+     * Converts string representation of the URL to {@link URI}.
+     * URLs with host part are converted to the canonical form, so equivalent URLs
+     * have equal URIs:
+     * <ul>
+     *     <li>fragment is removed;</li>
+     *     <li>scheme and host are converted to lower case;</li>
+     *     <li>default port of {@code http} and {@code https} schemes is removed;</li>
+     *     <li>{@code .} and {@code ..} path segments are removed;</li>
+     *     <li>hexadecimal digits of percent-encoded octets are converted to upper case;</li>
+     *     <li>empty path is replaced by "{@code /}".</li>
+     * </ul>
+     * Recently converted URLs are cached.
      *
      * @param url url to convert.
      *
@@ -45,13 +70,111 @@ public final class URLUtils {
      * @throws MalformedURLException if specified URL is invalid.
      */
     public static URI getURI(final String url) throws MalformedURLException {
+        final int index = url.hashCode() & (URI_CACHE_SIZE - 1);
+        final CachedURI cached = URI_CACHE[index];
+        if (cached != null && cached.url.equals(url)) {
+            return cached.uri;
+        }
+
         final String fragmentless = removeFragment(url);
+        URI uri = parseHttpURI(fragmentless);
         try {
-            final URI uri = new URL(fragmentless).toURI();
-            return uri.getPath() == null || uri.getPath().isEmpty() ? new URL(fragmentless + "/").toURI() : uri;
+            if (uri == null) {
+                uri = new URL(fragmentless).toURI();
+                if (uri.getHost() == null && (uri.getPath() == null || uri.getPath().isEmpty())) {
+                    uri = new URL(fragmentless + "/").toURI();
+                }
+            }
+            uri = canonical(uri);
         } catch (final URISyntaxException e) {
             throw new MalformedURLException(e.getMessage());
         }
+        URI_CACHE[index] = new CachedURI(url, uri);
+        return uri;
+    }
+
+    /**
+     * Converts common case of URL with {@code http} or {@code https} scheme and host
+     * directly by {@link URI#URI(String)}, skipping {@link URL} construction and conversion.
+     *
+     * @return parsed URI or {@code null} if the URL should be converted via {@link URL}.
+     */
+    private static URI parseHttpURI(final String url) {
+        if (!url.regionMatches(true, 0, "http://", 0, 7) && !url.regionMatches(true, 0, "https://", 0, 8)) {
+            return null;
+        }
+        try {
+            final URI uri = new URI(url);
+            return uri.getHost() == null ? null : uri;
+        } catch (final URISyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns canonical form of the URI with host. Already canonical URIs are returned as is.
+     */
+    private static URI canonical(final URI uri) throws URISyntaxException {
+        final String host = uri.getHost();
+        if (host == null) {
+            return uri;
+        }
+
+        final String scheme = uri.getScheme().toLowerCase(Locale.ENGLISH);
+        final String canonicalHost = host.toLowerCase(Locale.ENGLISH);
+        final int port = uri.getPort() == defaultPort(scheme) ? -1 : uri.getPort();
+        final String path = canonicalPath(uri.normalize().getRawPath());
+        final String query = upperCaseEscapes(uri.getRawQuery());
+        if (scheme.equals(uri.getScheme()) && canonicalHost.equals(host) && port == uri.getPort()
+                && path.equals(uri.getRawPath()) && Objects.equals(query, uri.getRawQuery())) {
+            return uri;
+        }
+
+        final StringBuilder sb = new StringBuilder(scheme).append("://");
+        if (uri.getRawUserInfo() != null) {
+            sb.append(uri.getRawUserInfo()).append('@');
+        }
+        sb.append(canonicalHost);
+        if (port != -1) {
+            sb.append(':').append(port);
+        }
+        sb.append(path);
+        if (query != null) {
+            sb.append('?').append(query);
+        }
+        return new URI(sb.toString());
+    }
+
+    private static int defaultPort(final String scheme) {
+        switch (scheme) {
+            case "http": return 80;
+            case "https": return 443;
+            default: return -2;
+        }
+    }
+
+    private static String canonicalPath(final String normalized) {
+        String path = normalized;
+        // Leading ".." segments are kept by URI.normalize, but cannot go above the root
+        while (path.startsWith("/../") || path.equals("/..")) {
+            path = path.substring(3);
+        }
+        return path.isEmpty() ? "/" : upperCaseEscapes(path);
+    }
+
+    private static String upperCaseEscapes(final String raw) {
+        if (raw == null || raw.indexOf('%') < 0) {
+            return raw;
+        }
+        final char[] chars = raw.toCharArray();
+        for (int i = 0; i + 2 < chars.length; i++) {
+            if (chars[i] == '%') {
+                chars[i + 1] = Character.toUpperCase(chars[i + 1]);
+                chars[i + 2] = Character.toUpperCase(chars[i + 2]);
+                i += 2;
+            }
+        }
+        return new String(chars);
     }
 
     /**
@@ -67,7 +190,10 @@ public final class URLUtils {
     }
 
     /**
-     * Extract links from the HTML document.
+     * Extract links from the HTML document. Document is scanned by
+     * {@link #extractLinksStreaming(URI, InputStream) streaming extractor} if
+     * {@value #STREAMING_PROPERTY} system property is set to {@code true} and
+     * {@link #extractLinksParsed(URI, InputStream) parsed} otherwise.
      *
      * @param url base URL for relative links.
      * @param is document stream.
@@ -77,19 +203,83 @@ public final class URLUtils {
      * @throws IOException if an error occurred during link extraction.
      */
     public static List<String> extractLinks(final URI url, final InputStream is) throws IOException {
-        final Elements elements = Jsoup.parse(is, null, url.toString()).select("a[href]");
+        return STREAMING ? extractLinksStreaming(url, is) : extractLinksParsed(url, is);
+    }
+
+    /**
+     * Extract links from the HTML document, parsing it to DOM.
+     * Relative links are resolved against the first {@code base} tag, if any.
+     *
+     * @param url base URL for relative links.
+     * @param is document stream.
+     *
+     * @return all links in the document.
+     *
+     * @throws IOException if an error occurred during link extraction.
+     */
+    public static List<String> extractLinksParsed(final URI url, final InputStream is) throws IOException {
+        final org.jsoup.nodes.Document document = Jsoup.parse(is, null, url.toString());
+        final Element base = document.select("base[href]").first();
+        final URI baseUrl = resolveBase(url, base == null ? null : base.attr("href"));
         final List<String> result = new ArrayList<>();
-        for (final Element element : elements) {
+        for (final Element element : document.select("a[href]")) {
+            addLink(baseUrl, element.attr("href"), result);
+        }
+//        System.out.println("Links for " + url + ": " + result);
+        return result;
+    }
+
+    /**
+     * Extract links from the HTML document, scanning anchor tags in document stream
+     * without building DOM. Document encoding and base URL are detected
+     * in the same way as by {@link #extractLinksParsed(URI, InputStream)}.
+     *
+     * @param url base URL for relative links.
+     * @param is document stream.
+     *
+     * @return all links in the document.
+     *
+     * @throws IOException if an error occurred during link extraction.
+     */
+    public static List<String> extractLinksStreaming(final URI url, final InputStream is) throws IOException {
+        final LinkScanner scanner = LinkScanner.scan(is);
+        final URI baseUrl = resolveBase(url, scanner.getBase());
+        final List<String> result = new ArrayList<>();
+        for (final String href : scanner.getHrefs()) {
+            addLink(baseUrl, href, result);
+        }
+        return result;
+    }
+
+    private static URI resolveBase(final URI url, final String base) {
+        if (base != null) {
             try {
-                final URI href = url.resolve(element.attr("href"));
-                if (("http".equalsIgnoreCase(href.getScheme()) || "https".equals(href.getScheme())) && href.getHost() != null) {
-                    result.add(removeFragment(href.normalize().toString()));
-                }
+                return url.resolve(base);
             } catch (final IllegalArgumentException ignored) {
-                // Invalid URI, ignore
+                // Invalid base, ignore
             }
         }
-//        System.out.println("Links for " + url + ": " + result);
-        return result;
+        return url;
+    }
+
+    private static void addLink(final URI url, final String link, final List<String> result) {
+        try {
+            final URI href = url.resolve(link);
+            if (("http".equalsIgnoreCase(href.getScheme()) || "https".equals(href.getScheme())) && href.getHost() != null) {
+                result.add(removeFragment(href.normalize().toString()));
+            }
+        } catch (final IllegalArgumentException ignored) {
+            // Invalid URI, ignore
+        }
+    }
+
+    private static final class CachedURI {
+        private final String url;
+        private final URI uri;
+
+        private CachedURI(final String url, final URI uri) {
+            this.url = url;
+            this.uri = uri;
+        }
     }
 }
@@ -0,0 +1,131 @@
+package info.kgeorgiy.java.advanced.crawler;
+
+import info.kgeorgiy.java.advanced.base.BaseTest;
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.util.Locale;
+
+/**
+ * Tests {@link URLUtils#getURI(String) URL canonicalization}.
+ * Tested class is not used.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class URLUtilsTest extends BaseTest {
+    private static final String[] SITES = {
+            "https://itmo.ru",
+            "http://www.kgeorgiy.info",
+            "https://de.ifmo.ru",
+            "http://nerc.itmo.ru/subregions/index.html",
+    };
+
+    @Test
+    public void test01_canonical() throws MalformedURLException {
+        equivalent(
+                "http://example.com/a/b?q=1",
+                "http://Example.COM/a/b?q=1",
+                "HTTP://example.com/a/b?q=1",
+                "http://example.com:80/a/b?q=1",
+                "http://example.com/a/./b?q=1",
+                "http://example.com/a/c/../b?q=1",
+                "http://example.com/../a/b?q=1",
+                "http://example.com/a/b?q=1#fragment"
+        );
+        equivalent(
+                "https://example.com/",
+                "https://example.com",
+                "https://example.com:443",
+                "https://EXAMPLE.com/#top",
+                "https://example.com/.."
+        );
+        equivalent("http://example.com/?q=1", "http://example.com?q=1");
+        equivalent("http://example.com/%7Euser/%2F?q=%3A", "http://example.com/%7euser/%2f?q=%3a");
+        equivalent("http://user@example.com:8080/", "http://user@EXAMPLE.com:8080");
+        equivalent("http://[::1]/", "http://[::1]:80");
+    }
+
+    @Test
+    public void test02_distinct() throws MalformedURLException {
+        distinct(
+                "http://example.com/a",
+                "http://example.com/A",
+                "https://example.com/a",
+                "http://example.com:8080/a",
+                "http://example.com:443/a",
+                "http://example.com/a?q",
+                "http://example.com/a/",
+                "http://example.com/%2Fa",
+                "http://www.example.com/a"
+        );
+    }
+
+    @Test
+    public void test03_host() throws MalformedURLException {
+        Assert.assertEquals("example.com", URLUtils.getHost("http://Example.COM/Path"));
+        Assert.assertEquals("www.example.com", URLUtils.getHost("HTTPS://WWW.EXAMPLE.COM:443/Path#Fragment"));
+        Assert.assertEquals("/Path", URLUtils.getURI("https://WWW.EXAMPLE.COM/Path").getPath());
+    }
+
+    @Test
+    public void test04_invalid() {
+        invalid("example.com/a");
+        invalid("unknown://example.com/a");
+        invalid("http://exa mple.com/a");
+        invalid("http://example.com/a b");
+    }
+
+    @Test
+    public void test05_cached() throws MalformedURLException {
+        final String url = "http://Example.com/cached#fragment";
+        Assert.assertSame("Cached", URLUtils.getURI(url), URLUtils.getURI(url));
+    }
+
+    @Test
+    public void test06_fixtures() throws IOException {
+        for (final String site : SITES) {
+            final ReplayDownloader downloader = new ReplayDownloader(site, 0, 0);
+            for (final String url : downloader.expected(site, 2).getDownloaded()) {
+                final URI uri = URLUtils.getURI(url);
+                Assert.assertEquals("Idempotent " + url, uri.toString(), URLUtils.getURI(uri.toString()).toString());
+                Assert.assertEquals("Host " + url, uri.getHost().toLowerCase(Locale.ENGLISH), uri.getHost());
+                Assert.assertEquals("Path " + url, uri.normalize().getRawPath(), uri.getRawPath());
+                Assert.assertNull("Fragment " + url, uri.getRawFragment());
+            }
+        }
+    }
+
+    private static void equivalent(final String expected, final String... urls) throws MalformedURLException {
+        final URI uri = URLUtils.getURI(expected);
+        Assert.assertEquals("Canonical form of " + expected, expected, uri.toString());
+        for (final String url : urls) {
+            // URI.equals ignores case of host and escapes, so string forms are compared
+            Assert.assertEquals("Canonical form of " + url, expected, URLUtils.getURI(url).toString());
+        }
+    }
+
+    private static void distinct(final String... urls) throws MalformedURLException {
+        for (int i = 0; i < urls.length; i++) {
+            for (int j = i + 1; j < urls.length; j++) {
+                Assert.assertNotEquals(
+                        urls[i] + " vs " + urls[j],
+                        URLUtils.getURI(urls[i]).toString(),
+                        URLUtils.getURI(urls[j]).toString()
+                );
+            }
+        }
+    }
+
+    private static void invalid(final String url) {
+        try {
+            URLUtils.getURI(url);
+            Assert.fail("Invalid URL converted: " + url);
+        } catch (final MalformedURLException ignored) {
+            // Expected
+        }
+    }
+}
@@ -7,6 +7,9 @@
 module info.kgeorgiy.java.advanced.crawler {
     requires transitive info.kgeorgiy.java.advanced.base;
     requires jsoup;
+    requires transitive java.net.http;
+    requires jdk.httpserver;
+    requires java.management;
 
     exports info.kgeorgiy.java.advanced.crawler;
 
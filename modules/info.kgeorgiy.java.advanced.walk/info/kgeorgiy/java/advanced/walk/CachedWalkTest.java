@@ -0,0 +1,137 @@
+package info.kgeorgiy.java.advanced.walk;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests for hash cache
+ * of <a href="https://www.kgeorgiy.info/courses/java-advanced/homeworks.html#homework-walk">Walk</a> homework.
+ * Tested class should accept {@code --cache cache_file} option and reuse hashes of files
+ * with unchanged size and modification time, except for files modified within last two seconds.
+ * Cached hashes are detected by changing file contents without changing its attributes.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class CachedWalkTest extends RecursiveWalkTest {
+    private static final FileTime OLD = FileTime.from(Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.SECONDS));
+
+    @Override
+    protected void run(final Path inputFile, final Path outputFile) {
+        runRaw("--cache", getCacheFile().toString(), inputFile.toString(), outputFile.toString());
+    }
+
+    @Test
+    public void test90_hit() throws IOException {
+        final Path file = write(randomFileName(), random(100), OLD);
+        final String hash = walkFile(file);
+        final byte[] changed = random(100);
+        write(file, changed, OLD);
+        Assert.assertEquals("Cached hash", hash, walkFile(file));
+        Assert.assertEquals("Hash without cache", hash(changed), walk(List.of(file.toString())).get(0).split(" ", 2)[0]);
+    }
+
+    @Test
+    public void test91_sizeChanged() throws IOException {
+        final Path file = write(randomFileName(), random(100), OLD);
+        walkFile(file);
+        final byte[] changed = random(101);
+        write(file, changed, OLD);
+        Assert.assertEquals("Hash after size change", hash(changed), walkFile(file));
+    }
+
+    @Test
+    public void test92_timeChanged() throws IOException {
+        final Path file = write(randomFileName(), random(100), OLD);
+        walkFile(file);
+        final byte[] changed = random(100);
+        write(file, changed, FileTime.from(OLD.toInstant().plusSeconds(1)));
+        Assert.assertEquals("Hash after modification time change", hash(changed), walkFile(file));
+    }
+
+    @Test
+    public void test93_racy() throws IOException {
+        final FileTime now = FileTime.from(Instant.now());
+        final Path file = write(randomFileName(), random(100), now);
+        walkFile(file);
+        final byte[] changed = random(100);
+        write(file, changed, now);
+        Assert.assertEquals("Hash of recently modified file", hash(changed), walkFile(file));
+    }
+
+    @Test
+    public void test94_prune() throws IOException {
+        final Path file = write(randomFileName(), random(100), OLD);
+        final Path other = write(randomFileName(), random(100), OLD);
+        walkFile(file);
+        walkFile(other);
+        final byte[] changed = random(100);
+        write(file, changed, OLD);
+        Assert.assertEquals("Hash of file not seen by previous walk", hash(changed), walkFile(file));
+    }
+
+    @Test
+    public void test95_hashFunctions() throws IOException {
+        final Path file = write(randomFileName(), random(100), OLD);
+        final String hash = walkFile(file);
+        walkFile(file, "--hash", "crc32c");
+        write(file, random(100), OLD);
+        Assert.assertEquals("Cached hash after other hash function", hash, walkFile(file));
+    }
+
+    @Test
+    public void test96_permissions() throws IOException {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return;
+        }
+        walkFile(write(randomFileName(), random(100), OLD));
+        final Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r--r--");
+        Files.setPosixFilePermissions(getCacheFile(), permissions);
+        walkFile(write(randomFileName(), random(100), OLD));
+        Assert.assertEquals("Cache permissions", permissions, Files.getPosixFilePermissions(getCacheFile()));
+    }
+
+    private Path getCacheFile() {
+        return DIR.resolve(testMethodName + ".cache");
+    }
+
+    private String walkFile(final Path file, final String... options) throws IOException {
+        final List<String> args = new ArrayList<>(List.of("--cache", getCacheFile().toString()));
+        args.addAll(Arrays.asList(options));
+        final List<String> lines = walk(List.of(file.toString()), args.toArray(String[]::new));
+        Assert.assertEquals("Output lines", 1, lines.size());
+        return lines.get(0).split(" ", 2)[0];
+    }
+
+    private byte[] random(final int size) {
+        final byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private Path write(final String name, final byte[] bytes, final FileTime time) throws IOException {
+        final Path dir = getTestDir();
+        Files.createDirectories(dir);
+        return write(dir.resolve(name), bytes, time);
+    }
+
+    private static Path write(final Path file, final byte[] bytes, final FileTime time) throws IOException {
+        Files.write(file, bytes);
+        Files.setLastModifiedTime(file, time);
+        return file;
+    }
+}
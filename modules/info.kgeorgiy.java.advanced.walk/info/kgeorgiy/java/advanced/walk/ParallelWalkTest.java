@@ -0,0 +1,310 @@
+package info.kgeorgiy.java.advanced.walk;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests for parallel and streaming versions
+ * of <a href="https://www.kgeorgiy.info/courses/java-advanced/homeworks.html#homework-walk">Walk</a> homework.
+ * Tested class should accept {@code --threads N} option and {@code -} as input and output file,
+ * and have {@code walk(ReadableByteChannel, WritableByteChannel, int depth, O options)} method,
+ * where options class {@code O} has {@code DEFAULT} field and {@code withThreads(int)} method.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ParallelWalkTest extends RecursiveWalkTest {
+    private static final String THREADS = "4";
+    private static final int LINES = 20_000;
+    private static final long TIMEOUT = 30;
+
+    @Override
+    protected void run(final Path inputFile, final Path outputFile) {
+        runRaw("--threads", THREADS, inputFile.toString(), outputFile.toString());
+    }
+
+    @Test
+    public void test90_order() throws IOException {
+        final Map<String, String> files = randomFiles(100, 100_000);
+        final List<String> inputs = new ArrayList<>(files.keySet());
+        Collections.shuffle(inputs, random);
+        Assert.assertEquals("Output order", expected(inputs, files), walk(inputs, "--threads", THREADS));
+
+        final Path root = getTestDir().resolve(randomFileName());
+        randomFiles(50, 10_000, root);
+        randomFiles(50, 10_000, root.resolve(randomFileName()));
+        randomFiles(50, 10_000, root.resolve(randomFileName()));
+        final List<String> roots = List.of(root.toString());
+        Assert.assertEquals("Recursive output order", walk(roots, "--threads", "1"), walk(roots, "--threads", THREADS));
+    }
+
+    @Test
+    public void test91_window() throws Exception {
+        final Map<String, String> files = randomFiles(1, 100);
+        final String file = files.keySet().iterator().next();
+        final Lines input = new Lines(file);
+        final StalledOutput output = new StalledOutput(false);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> walk = executor.submit(() -> walkChannels(input, output));
+            final long read = awaitStall(input);
+            Assert.assertFalse("Walk should wait for output", walk.isDone());
+            Assert.assertTrue("Input read ahead of stalled output: " + read + " lines", read < LINES / 2);
+
+            output.release.countDown();
+            get(walk);
+            Assert.assertEquals("Input lines", LINES, input.getLines());
+            Assert.assertEquals("Output lines", Collections.nCopies(LINES, files.get(file) + " " + file), output.getLines());
+        } finally {
+            output.release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test92_outputFailure() throws Exception {
+        final Lines input = new Lines(randomFiles(1, 100).keySet().iterator().next());
+        final StalledOutput output = new StalledOutput(true);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> walk = executor.submit(() -> walkChannels(input, output));
+            // Output fails when traversal already waits for the full window
+            awaitStall(input);
+            output.release.countDown();
+            get(walk);
+            Assert.fail("Output failure expected");
+        } catch (final ExecutionException e) {
+            Assert.assertTrue("IOException expected: " + e.getCause(), e.getCause() instanceof IOException);
+        } finally {
+            output.release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test93_stdio() throws IOException, InterruptedException {
+        final Map<String, String> files = randomFiles(20, 1000);
+        final List<String> inputs = new ArrayList<>(files.keySet());
+        final List<String> expected = expected(inputs, files);
+        final Path dir = getTestDir();
+        final Path inputFile = dir.resolve("input");
+        Files.writeString(inputFile, generateInput(inputs));
+
+        Assert.assertEquals("Standard input and output", expected, process(generateInput(inputs), "-", "-"));
+        Assert.assertEquals("Standard output", expected, process("", inputFile.toString(), "-"));
+
+        final Path outputFile = dir.resolve(randomFileName()).resolve("output");
+        Assert.assertEquals("Standard input", List.of(), process(generateInput(inputs), "-", outputFile.toString()));
+        Assert.assertEquals("Output file", expected, Files.readAllLines(outputFile, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void test94_invalidStdio() throws IOException, InterruptedException {
+        final Path dir = getTestDir();
+        Files.createDirectories(dir);
+        Assert.assertEquals("Missing input", List.of(), process("", dir.resolve(randomFileName()).toString(), "-"));
+        Assert.assertEquals("Directory input", List.of(), process("", dir.toString(), "-"));
+        Assert.assertEquals("Directory output", List.of(), process("", "-", dir.toString()));
+    }
+
+    private static List<String> expected(final List<String> inputs, final Map<String, String> files) {
+        final List<String> expected = new ArrayList<>();
+        for (final String input : inputs) {
+            expected.add(files.get(input) + " " + input);
+        }
+        return expected;
+    }
+
+    private static List<String> process(final String input, final String... files) throws IOException, InterruptedException {
+        final List<String> command = command();
+        command.addAll(List.of("--threads", THREADS));
+        command.addAll(Arrays.asList(files));
+        final Process process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try (final OutputStream stdin = process.getOutputStream()) {
+            stdin.write(input.getBytes(StandardCharsets.UTF_8));
+        }
+        final String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        if (!process.waitFor(TIMEOUT, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            throw new AssertionError("Walk process timed out");
+        }
+        Assert.assertEquals("Exit code", 0, process.exitValue());
+        return output.isEmpty() ? List.of() : List.of(output.split(System.lineSeparator()));
+    }
+
+    private static List<String> command() {
+        final String java = ProcessHandle.current().info().command()
+                .orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        final List<String> command = new ArrayList<>(List.of(java));
+
+        final String classPath = System.getProperty("java.class.path");
+        if (classPath != null && !classPath.isEmpty()) {
+            command.addAll(List.of("-cp", classPath));
+        }
+
+        final Class<?> cut = loadClass();
+        final Module module = cut.getModule();
+        if (module.isNamed()) {
+            command.addAll(List.of("-p", System.getProperty("jdk.module.path"), "-m", module.getName() + "/" + cut.getName()));
+        } else {
+            command.add(cut.getName());
+        }
+        return command;
+    }
+
+    private static Void walkChannels(final ReadableByteChannel input, final WritableByteChannel output) throws Exception {
+        final Method walk = Arrays.stream(loadClass().getMethods())
+                .filter(m -> m.getName().equals("walk") && m.getParameterCount() == 4
+                        && m.getParameterTypes()[0] == ReadableByteChannel.class)
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("Missing walk(ReadableByteChannel, WritableByteChannel, int, options) method"));
+        final Class<?> type = walk.getParameterTypes()[3];
+        final Object options = type.getMethod("withThreads", int.class)
+                .invoke(type.getField("DEFAULT").get(null), Integer.parseInt(THREADS));
+        try {
+            walk.invoke(null, input, output, Integer.MAX_VALUE, options);
+        } catch (final InvocationTargetException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw new AssertionError(e.getCause());
+        }
+        return null;
+    }
+
+    private static long awaitStall(final Lines input) throws InterruptedException {
+        long read;
+        long previous = -1;
+        while ((read = input.getLines()) != previous) {
+            previous = read;
+            Thread.sleep(200);
+        }
+        return read;
+    }
+
+    private static void get(final Future<?> future) throws ExecutionException, InterruptedException {
+        try {
+            future.get(TIMEOUT, TimeUnit.SECONDS);
+        } catch (final TimeoutException e) {
+            future.cancel(true);
+            throw new AssertionError("Walk timed out");
+        }
+    }
+
+    /**
+     * Generates {@link #LINES} copies of a line on demand, counting lines read.
+     */
+    private static final class Lines implements ReadableByteChannel {
+        private final byte[] line;
+        private final AtomicLong read = new AtomicLong();
+
+        private Lines(final String file) {
+            line = (file + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) {
+            final long position = read.get();
+            final long total = (long) line.length * LINES;
+            if (position == total) {
+                return -1;
+            }
+            final int length = (int) Math.min(dst.remaining(), total - position);
+            for (int i = 0; i < length; i++) {
+                dst.put(line[(int) ((position + i) % line.length)]);
+            }
+            read.addAndGet(length);
+            return length;
+        }
+
+        private long getLines() {
+            return read.get() / line.length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Blocks writes until released, then records or fails them.
+     */
+    private static final class StalledOutput implements WritableByteChannel {
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        private final boolean fail;
+
+        private StalledOutput(final boolean fail) {
+            this.fail = fail;
+        }
+
+        @Override
+        public int write(final ByteBuffer src) throws IOException {
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted");
+            }
+            if (fail) {
+                throw new IOException("No space left on device");
+            }
+            final byte[] bytes = new byte[src.remaining()];
+            src.get(bytes);
+            synchronized (written) {
+                written.write(bytes);
+            }
+            return bytes.length;
+        }
+
+        private List<String> getLines() {
+            synchronized (written) {
+                return List.of(written.toString(StandardCharsets.UTF_8).split(System.lineSeparator()));
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
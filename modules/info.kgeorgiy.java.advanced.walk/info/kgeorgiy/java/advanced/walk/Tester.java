@@ -14,6 +14,8 @@ public class Tester extends BaseTester {
         new Tester()
                 .add("Walk", WalkTest.class)
                 .add("RecursiveWalk", RecursiveWalkTest.class)
+                .add("ParallelWalk", ParallelWalkTest.class)
+                .add("CachedWalk", CachedWalkTest.class)
                 .add("AdvancedWalk", (tester, cut) -> {
                     tester.test("Walk", cut.replace(".RecursiveWalk", ".Walk"));
                     return tester.test("RecursiveWalk", cut);
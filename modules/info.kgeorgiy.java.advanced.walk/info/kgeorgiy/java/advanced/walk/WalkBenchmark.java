@@ -0,0 +1,399 @@
+package info.kgeorgiy.java.advanced.walk;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Benchmark of recursive walk implementations over generated file trees.
+ * <p>
+ * Every combination of hash function, I/O mode, number of threads and run mode is walked
+ * once for warm-up, which also brings the tree to the page cache, and the median of several runs is reported
+ * as wall time, files per second and megabytes per second.
+ * Outputs are compared with the first one of the same hash function, so broken walks are not reported as fast.
+ * </p>
+ * <p>
+ * Run modes are
+ * {@code files} ({@code main} over input and output files),
+ * {@code streaming} ({@code walk(ReadableByteChannel, WritableByteChannel, int, O options)} over file channels) and
+ * {@code cached} ({@code main} with {@code --cache} file, filled by warm-up).
+ * Tested class should accept {@code --threads N}, {@code --io stream|channel|mmap}, {@code --hash NAME}
+ * and {@code --cache FILE} options, and its options class {@code O} should have {@code DEFAULT} field and
+ * {@code withThreads(int)}, {@code withReadMode(M)} and {@code withHash(String)} methods.
+ * </p>
+ */
+public final class WalkBenchmark {
+    private static final List<String> IO = List.of("stream", "channel", "mmap");
+    private static final List<String> MODES = List.of("files", "streaming", "cached");
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+    // Files modified within last seconds are not cached
+    private static final FileTime MODIFIED = FileTime.from(Instant.now().minus(1, ChronoUnit.HOURS));
+
+    private final Class<?> walk;
+    private int files = 10_000;
+    private int depth = 3;
+    private int fanout = 8;
+    private String sizes = "pareto:1024:1.2:16777216";
+    private long seed = 4327;
+    private int runs = 3;
+    private List<Integer> threads = List.of(1, Math.max(2, Runtime.getRuntime().availableProcessors()));
+    private List<String> io = IO;
+    private List<String> modes = MODES;
+    private List<String> hashes = List.of("pjw64");
+    private Path dir;
+
+    private WalkBenchmark(final Class<?> walk) {
+        this.walk = walk;
+    }
+
+    /**
+     * Runs benchmark.
+     *
+     * @param args walk class name followed by options.
+     */
+    public static void main(final String... args) {
+        if (args == null || args.length % 2 != 1 || Arrays.stream(args).anyMatch(Objects::isNull)) {
+            usage();
+            return;
+        }
+
+        try {
+            final WalkBenchmark benchmark = new WalkBenchmark(Class.forName(args[0]));
+            for (int i = 1; i < args.length; i += 2) {
+                benchmark.set(args[i], args[i + 1]);
+            }
+            benchmark.run();
+        } catch (final ClassNotFoundException e) {
+            System.err.println("Walk class not found: " + e.getMessage());
+        } catch (final IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+        } catch (final IOException e) {
+            System.err.println("Benchmark failed: " + e.getMessage());
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage:");
+        System.err.format(
+                "    java -cp . -p . -m info.kgeorgiy.java.advanced.walk/%s Solution.class.name"
+                        + " [--files N] [--depth N] [--fanout N] [--sizes SIZES] [--seed N] [--runs N]"
+                        + " [--threads N,...] [--io %s] [--modes %s] [--hashes NAME,...] [--dir DIR]%n",
+                WalkBenchmark.class.getName(),
+                String.join(",", IO),
+                String.join(",", MODES));
+        System.err.println("    SIZES: fixed:BYTES | uniform:MIN:MAX | pareto:MIN:ALPHA:MAX");
+    }
+
+    private void set(final String name, final String value) {
+        try {
+            switch (name) {
+                case "--files":
+                    files = positive(name, Integer.parseInt(value));
+                    break;
+                case "--depth":
+                    depth = Integer.parseInt(value);
+                    break;
+                case "--fanout":
+                    fanout = positive(name, Integer.parseInt(value));
+                    break;
+                case "--sizes":
+                    Sizes.parse(value);
+                    sizes = value;
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--runs":
+                    runs = positive(name, Integer.parseInt(value));
+                    break;
+                case "--threads":
+                    threads = Arrays.stream(value.split(","))
+                            .map(count -> positive(name, Integer.parseInt(count)))
+                            .collect(Collectors.toList());
+                    break;
+                case "--io":
+                    io = list(value, IO);
+                    break;
+                case "--modes":
+                    modes = list(value, MODES);
+                    break;
+                case "--hashes":
+                    hashes = Arrays.asList(value.toLowerCase(Locale.ROOT).split(","));
+                    break;
+                case "--dir":
+                    dir = Path.of(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + name);
+            }
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + value);
+        }
+    }
+
+    private static List<String> list(final String value, final List<String> allowed) {
+        final List<String> values = Arrays.asList(value.toLowerCase(Locale.ROOT).split(","));
+        if (!allowed.containsAll(values)) {
+            throw new IllegalArgumentException("Unknown value in " + value);
+        }
+        return values;
+    }
+
+    private static int positive(final String name, final int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " should be positive: " + value);
+        }
+        return value;
+    }
+
+    private void run() throws IOException {
+        final Path root = dir != null ? dir : Files.createTempDirectory("walk-benchmark");
+        try {
+            final Path tree = root.resolve("tree");
+            final long bytes = generate(tree);
+            final Path input = root.resolve("input.txt");
+            Files.writeString(input, tree + System.lineSeparator());
+            final Path output = root.resolve("output.txt");
+            final Path cache = root.resolve("cache.bin");
+
+            System.out.format("%d files, %.1f MB, depth %d, fanout %d, sizes %s%n",
+                    files, bytes / 1e6, depth, fanout, sizes);
+            System.out.format("%-8s %7s %-9s %-9s %9s %11s %9s%n",
+                    "io", "threads", "mode", "hash", "time,ms", "files/s", "MB/s");
+            for (final String hash : hashes) {
+                List<String> expected = null;
+                for (final String mode : io) {
+                    for (final int threadCount : threads) {
+                        for (final String run : modes) {
+                            final Run walk = new Run(mode, threadCount, run, hash, input, output, cache);
+                            Files.deleteIfExists(cache);
+                            // Warm-up also brings the tree to the page cache and fills hash cache
+                            walk.run();
+                            final long[] times = new long[runs];
+                            for (int i = 0; i < runs; i++) {
+                                final long start = System.nanoTime();
+                                walk.run();
+                                times[i] = System.nanoTime() - start;
+                            }
+                            Arrays.sort(times);
+                            final long median = times[runs / 2];
+
+                            final List<String> actual = Files.readAllLines(output, StandardCharsets.UTF_8);
+                            if (expected == null && actual.size() == files) {
+                                expected = actual;
+                            }
+                            System.out.format("%-8s %7d %-9s %-9s %9d %11.0f %9.1f%s%n",
+                                    mode, threadCount, run, hash,
+                                    median / 1_000_000, files * 1e9 / median, bytes * 1e3 / median,
+                                    actual.equals(expected) ? "" : " WRONG OUTPUT");
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (dir == null) {
+                delete(root);
+            }
+        }
+    }
+
+    private long generate(final Path tree) throws IOException {
+        final List<Path> dirs = new ArrayList<>(List.of(tree));
+        for (int level = 0, from = 0; level < depth; level++) {
+            final int to = dirs.size();
+            for (int i = from; i < to; i++) {
+                for (int j = 0; j < fanout; j++) {
+                    dirs.add(dirs.get(i).resolve("d" + j));
+                }
+            }
+            from = to;
+        }
+        for (final Path d : dirs) {
+            Files.createDirectories(d);
+        }
+
+        final Sizes distribution = Sizes.parse(sizes);
+        final SplittableRandom random = new SplittableRandom(seed);
+        final byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+        long total = 0;
+        for (int i = 0; i < files; i++) {
+            final long size = distribution.sample(random);
+            final Path file = dirs.get(random.nextInt(dirs.size())).resolve("f" + i);
+            try (final OutputStream out = Files.newOutputStream(file)) {
+                for (long left = size; left > 0; left -= buffer.length) {
+                    final int length = (int) Math.min(left, buffer.length);
+                    for (int j = 0; j < length; j += 8) {
+                        final long value = random.nextLong();
+                        for (int k = 0; k < 8; k++) {
+                            buffer[j + k] = (byte) (value >>> (k * 8));
+                        }
+                    }
+                    out.write(buffer, 0, length);
+                }
+            }
+            Files.setLastModifiedTime(file, MODIFIED);
+            total += size;
+        }
+        return total;
+    }
+
+    private static void delete(final Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path d, final IOException exc) throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Single walk configuration.
+     */
+    private final class Run {
+        private final String io;
+        private final int threads;
+        private final String mode;
+        private final String hash;
+        private final Path input;
+        private final Path output;
+        private final Path cache;
+
+        private Run(
+                final String io,
+                final int threads,
+                final String mode,
+                final String hash,
+                final Path input,
+                final Path output,
+                final Path cache
+        ) {
+            this.io = io;
+            this.threads = threads;
+            this.mode = mode;
+            this.hash = hash;
+            this.input = input;
+            this.output = output;
+            this.cache = cache;
+        }
+
+        void run() throws IOException {
+            try {
+                if ("streaming".equals(mode)) {
+                    stream();
+                } else {
+                    final List<String> args = new ArrayList<>(List.of(
+                            "--threads", Integer.toString(threads), "--io", io, "--hash", hash));
+                    if ("cached".equals(mode)) {
+                        args.addAll(List.of("--cache", cache.toString()));
+                    }
+                    args.addAll(List.of(input.toString(), output.toString()));
+                    walk.getMethod("main", String[].class).invoke(null, (Object) args.toArray(String[]::new));
+                }
+            } catch (final InvocationTargetException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IllegalArgumentException("Walk failed: " + e.getCause(), e.getCause());
+            } catch (final ReflectiveOperationException e) {
+                throw new IllegalArgumentException("Unsupported walk class: " + e.getMessage(), e);
+            }
+        }
+
+        private void stream() throws IOException, ReflectiveOperationException {
+            final Method method = Arrays.stream(walk.getMethods())
+                    .filter(m -> m.getName().equals("walk") && m.getParameterCount() == 4
+                            && m.getParameterTypes()[0] == ReadableByteChannel.class)
+                    .findFirst()
+                    .orElseThrow(() -> new NoSuchMethodException("walk(ReadableByteChannel, WritableByteChannel, int, options)"));
+            final Object options = options(method.getParameterTypes()[3]);
+            try (
+                    final FileChannel in = FileChannel.open(input);
+                    final FileChannel out = FileChannel.open(output,
+                            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)
+            ) {
+                method.invoke(null, in, out, Integer.MAX_VALUE, options);
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Object options(final Class<?> type) throws ReflectiveOperationException {
+            final Method withReadMode = Arrays.stream(type.getMethods())
+                    .filter(m -> m.getName().equals("withReadMode") && m.getParameterCount() == 1)
+                    .findFirst()
+                    .orElseThrow(() -> new NoSuchMethodException("withReadMode"));
+            final Class<? extends Enum> readMode = withReadMode.getParameterTypes()[0].asSubclass(Enum.class);
+
+            Object options = type.getField("DEFAULT").get(null);
+            options = type.getMethod("withThreads", int.class).invoke(options, threads);
+            options = type.getMethod("withHash", String.class).invoke(options, hash);
+            return withReadMode.invoke(options, Enum.valueOf(readMode, io.toUpperCase(Locale.ROOT)));
+        }
+    }
+
+    /**
+     * File size distribution.
+     */
+    private interface Sizes {
+        long sample(SplittableRandom random);
+
+        static Sizes parse(final String spec) {
+            final String[] parts = spec.split(":");
+            try {
+                switch (parts[0]) {
+                    case "fixed":
+                        if (parts.length == 2) {
+                            final long size = Long.parseLong(parts[1]);
+                            return random -> size;
+                        }
+                        break;
+                    case "uniform":
+                        if (parts.length == 3) {
+                            final long min = Long.parseLong(parts[1]);
+                            final long max = Long.parseLong(parts[2]);
+                            return random -> min + (long) (random.nextDouble() * (max - min + 1));
+                        }
+                        break;
+                    case "pareto":
+                        if (parts.length == 4) {
+                            final long min = Long.parseLong(parts[1]);
+                            final double alpha = Double.parseDouble(parts[2]);
+                            final long max = Long.parseLong(parts[3]);
+                            return random -> Math.min(max, (long) (min / Math.pow(1 - random.nextDouble(), 1 / alpha)));
+                        }
+                        break;
+                    default:
+                }
+            } catch (final NumberFormatException ignored) {
+            }
+            throw new IllegalArgumentException("Invalid size distribution: " + spec);
+        }
+    }
+}
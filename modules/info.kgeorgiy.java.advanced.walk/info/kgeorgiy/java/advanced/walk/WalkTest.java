@@ -28,7 +28,7 @@ import java.util.stream.Collectors;
  */
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class WalkTest extends BaseTest {
-    private static final Path DIR = Path.of("__Test__Walk__");
+    protected static final Path DIR = Path.of("__Test__Walk__");
     private static final String ENGLISH_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
     private static final SimpleFileVisitor<Path> DELETE = new SimpleFileVisitor<>() {
         @Override
@@ -250,11 +250,21 @@ public class WalkTest extends BaseTest {
         Assert.assertTrue("Some files missing: \n    " + String.join("\n    ", files.keySet()), files.isEmpty());
     }
 
-    private static void run(final Path inputFile, final Path outputFile) {
+    protected List<String> walk(final Collection<String> inputs, final String... options) throws IOException {
+        final Path inputFile = DIR.resolve(testMethodName + ".in");
+        final Path outputFile = DIR.resolve(testMethodName + ".out");
+        Files.writeString(inputFile, generateInput(inputs));
+        final List<String> args = new ArrayList<>(Arrays.asList(options));
+        args.addAll(List.of(inputFile.toString(), outputFile.toString()));
+        runRaw(args.toArray(String[]::new));
+        return Files.readAllLines(outputFile, StandardCharsets.UTF_8);
+    }
+
+    protected void run(final Path inputFile, final Path outputFile) {
         runRaw(inputFile.toString(), outputFile.toString());
     }
 
-    private static void runRaw(final String... args) {
+    protected static void runRaw(final String... args) {
         final Method method;
         final Class<?> cut = loadClass();
         try {
@@ -271,7 +281,7 @@ public class WalkTest extends BaseTest {
         }
     }
 
-    private static String generateInput(final Collection<String> files) {
+    protected static String generateInput(final Collection<String> files) {
         final StringWriter stringWriter = new StringWriter();
         final PrintWriter writer = new PrintWriter(stringWriter);
         files.forEach(writer::println);
@@ -315,7 +325,7 @@ public class WalkTest extends BaseTest {
         return start;
     }
 
-    private static String hash(final byte[] bytes) {
+    protected static String hash(final byte[] bytes) {
         return String.format("%016x", hash(bytes, bytes.length, 0));
     }
 }